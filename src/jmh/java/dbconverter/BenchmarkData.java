@@ -0,0 +1,70 @@
+package dbconverter;
+
+import java.util.Collection;
+
+import org.influxdb.dto.QueryResult;
+
+import dbconverter.Settings.Types;
+import dbconverter.Utils.Things;
+
+/**
+ * Synthetic input for the benchmarks, created by the {@link Generator}.
+ */
+public class BenchmarkData {
+
+	/**
+	 * 2019-01-01T00:00:00Z
+	 */
+	public final static long START_MILLIS = 1546300800000L;
+
+	/**
+	 * Interval between two rows; OpenEMS writes once per second.
+	 */
+	public final static long INTERVAL_MILLIS = 1000;
+
+	/**
+	 * Share of values that are not set.
+	 */
+	public final static double NULL_RATIO = 0.1;
+
+	private BenchmarkData() {
+	}
+
+	private static Generator getGenerator(Types type, long seed) {
+		return new Generator(type, seed) //
+				.setGapRatio(0) //
+				.setNullRatio(NULL_RATIO) //
+				.setOldFormatRatio(0) //
+				.setEssCount(3) //
+				.setProductionMeterCount(2) //
+				.setChargerCount(2) //
+				.setEvcsCount(1);
+	}
+
+	/**
+	 * Gets Things with every kind of Component the Converter supports: a cluster
+	 * of two ESS, a grid meter, an asymmetric and a symmetric production meter,
+	 * two chargers and an EVCS.
+	 *
+	 * @return the Things
+	 * @throws Exception on error
+	 */
+	public static Things getThings() throws Exception {
+		return getGenerator(Types.OPENEMS_V1, 0).getThings(0);
+	}
+
+	/**
+	 * Creates a QueryResult like the one of a chunked query: one Series with
+	 * RFC3339 timestamps; {@link #NULL_RATIO} of the values are not set.
+	 *
+	 * @param channels the channels
+	 * @param rows     the number of rows
+	 * @param seed     the seed for the values
+	 * @return the QueryResult
+	 * @throws Exception on error
+	 */
+	public static QueryResult getQueryResult(Collection<String> channels, int rows, long seed) throws Exception {
+		return getGenerator(Types.OPENEMS_V1, seed).query(0, START_MILLIS,
+				START_MILLIS + (rows - 1) * INTERVAL_MILLIS, channels);
+	}
+}
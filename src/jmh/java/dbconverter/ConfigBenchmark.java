@@ -0,0 +1,92 @@
+package dbconverter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Benchmarks parsing the config of a large Edge with {@link #COMPONENTS}
+ * Components and {@link #FACTORIES} Factories, via a JSON tree and streamed.
+ * One operation is one config.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigBenchmark {
+
+	private final static int COMPONENTS = 400;
+	private final static int FACTORIES = 40;
+	private final static int PROPERTIES = 50;
+
+	private String config;
+
+	@Setup
+	public void setup() {
+		JsonObject components = new JsonObject();
+		for (int i = 0; i < COMPONENTS; i++) {
+			JsonObject properties = new JsonObject();
+			for (int p = 0; p < PROPERTIES; p++) {
+				properties.addProperty("property" + p, "value" + p);
+			}
+			components.add("component" + i, JsonUtils.buildJsonObject() //
+					.addProperty("factoryId", "Factory" + i % FACTORIES) //
+					.add("properties", properties) //
+					.build());
+		}
+		JsonObject factories = new JsonObject();
+		for (int f = 0; f < FACTORIES; f++) {
+			JsonArray natureIds = new JsonArray();
+			natureIds.add("io.openems.edge.common.component.OpenemsComponent");
+			JsonArray properties = new JsonArray();
+			for (int p = 0; p < PROPERTIES; p++) {
+				properties.add(JsonUtils.buildJsonObject() //
+						.addProperty("id", "property" + p) //
+						.addProperty("name", "Property " + p) //
+						.addProperty("description", "") //
+						.addProperty("isRequired", false) //
+						.add("schema", JsonUtils.buildJsonObject().addProperty("type", "string").build()) //
+						.build());
+			}
+			factories.add("Factory" + f, JsonUtils.buildJsonObject() //
+					.addProperty("name", "Factory " + f) //
+					.addProperty("description", "") //
+					.add("natureIds", natureIds) //
+					.add("properties", properties) //
+					.build());
+		}
+		this.config = JsonUtils.buildJsonObject() //
+				.add("components", components) //
+				.add("factories", factories) //
+				.build().toString();
+	}
+
+	@Benchmark
+	public EdgeConfig fromJson() throws Exception {
+		return EdgeConfig.fromJson(JsonUtils.parseToJsonObject(this.config));
+	}
+
+	@Benchmark
+	public EdgeConfig parseAll() throws Exception {
+		return EdgeConfig.parse(this.config, EdgeConfig.Content.ALL);
+	}
+
+	@Benchmark
+	public EdgeConfig parseComponentsAndFactories() throws Exception {
+		return EdgeConfig.parse(this.config, EdgeConfig.Content.COMPONENTS_AND_FACTORIES);
+	}
+}
@@ -0,0 +1,74 @@
+package dbconverter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import dbconverter.Settings.Types;
+import dbconverter.Utils.Things;
+import dbconverter.influx.ChunkData;
+import dbconverter.influx.FieldBuffer;
+import dbconverter.influx.Influx;
+
+/**
+ * Benchmarks compiling and executing a {@link Converter.Plan}. One operation
+ * of 'convert' is one row.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConverterBenchmark {
+
+	private final static int ROWS = 10_000;
+
+	@Param({ "OPENEMS_V1", "DESS" })
+	public String type;
+
+	private Converter converter;
+	private Things things;
+	private Converter.Plan plan;
+	private ChunkData data;
+	private ChunkData.Row row;
+	private FieldBuffer output;
+
+	@Setup
+	public void setup() throws Exception {
+		this.converter = new Converter(Types.valueOf(this.type));
+		this.things = BenchmarkData.getThings();
+		this.plan = this.converter.compile(this.things);
+		this.data = Influx.queryResultToList(this.converter.DICTIONARY,
+				BenchmarkData.getQueryResult(this.converter.CHANNELS, ROWS, 1));
+		this.row = this.data.row();
+		this.output = this.plan.createBuffer();
+	}
+
+	@Benchmark
+	public Converter.Plan compile() throws Exception {
+		return this.converter.compile(this.things);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void convert(Blackhole blackhole) {
+		for (int i = 0; i < this.data.size(); i++) {
+			this.row.setRow(i);
+			this.plan.apply(this.row, this.output);
+			blackhole.consume(this.output);
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package dbconverter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.influxdb.dto.QueryResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dbconverter.Settings.Types;
+import dbconverter.influx.ChunkData;
+import dbconverter.influx.FieldBuffer;
+import dbconverter.influx.Influx;
+import dbconverter.influx.LineProtocol;
+
+/**
+ * Benchmarks parsing query results and encoding the line protocol for one batch
+ * of {@link #ROWS} rows of an OPENEMS_V1 FEMS. One operation is one row.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InfluxBenchmark {
+
+	private final static int ROWS = 10_000;
+
+	private Converter converter;
+	private Converter.Plan plan;
+	private QueryResult source;
+	private QueryResult target;
+	private ChunkData data;
+	private LineProtocol lineProtocol;
+
+	@Setup
+	public void setup() throws Exception {
+		this.converter = new Converter(Types.OPENEMS_V1);
+		this.plan = this.converter.compile(BenchmarkData.getThings());
+		this.source = BenchmarkData.getQueryResult(this.converter.CHANNELS, ROWS, 1);
+
+		// the target measurement holds the output channels
+		List<String> outputChannels = new ArrayList<>();
+		FieldBuffer output = this.plan.createBuffer();
+		for (int i = 0; i < output.size(); i++) {
+			outputChannels.add(output.getChannel(i));
+		}
+		this.target = BenchmarkData.getQueryResult(outputChannels, ROWS, 2);
+
+		this.data = Influx.queryResultToList(this.converter.DICTIONARY, this.source);
+		this.lineProtocol = new LineProtocol();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public ChunkData queryResultToList() {
+		return Influx.queryResultToList(this.converter.DICTIONARY, this.source);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public ChunkData queryResultToListWithTarget() {
+		return Influx.queryResultToList(this.converter.DICTIONARY, this.source, this.target);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public LineProtocol encode() throws Exception {
+		Influx.encode(0, this.data, this.plan, this.lineProtocol);
+		return this.lineProtocol;
+	}
+}
@@ -0,0 +1,211 @@
+package dbconverter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import dbconverter.Settings.Types;
+import dbconverter.influx.ChunkData;
+import dbconverter.influx.FieldBuffer;
+import dbconverter.influx.Influx;
+import dbconverter.influx.InfluxPool;
+import dbconverter.influx.LineProtocol;
+
+/**
+ * Benchmarks writing one batch of {@link #ROWS} Points to a local stand-in for
+ * Influx, with the Points in ascending or in random timestamp order. One
+ * operation is one Point.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WriteBenchmark {
+
+	private final static int ROWS = 10_000;
+
+	/**
+	 * Emulates the write path of the Influx cache: values are appended per series
+	 * and field; an entry that received a value out of order is sorted when the
+	 * cache is snapshotted, which happens here after every request.
+	 */
+	private static class StandIn {
+
+		private static class Entry {
+			private long[] timestamps = new long[1024];
+			private long[] values = new long[1024];
+			private int size = 0;
+			private boolean needSort = false;
+
+			private void add(long timestamp, long value) {
+				if (this.size == this.timestamps.length) {
+					this.timestamps = Arrays.copyOf(this.timestamps, this.size * 2);
+					this.values = Arrays.copyOf(this.values, this.size * 2);
+				}
+				if (this.size > 0 && timestamp <= this.timestamps[this.size - 1]) {
+					this.needSort = true;
+				}
+				this.timestamps[this.size] = timestamp;
+				this.values[this.size] = value;
+				this.size++;
+			}
+
+			private void snapshot() {
+				if (this.needSort) {
+					Integer[] order = new Integer[this.size];
+					for (int i = 0; i < this.size; i++) {
+						order[i] = i;
+					}
+					Arrays.sort(order, (i1, i2) -> Long.compare(this.timestamps[i1], this.timestamps[i2]));
+					long[] timestamps = new long[this.timestamps.length];
+					long[] values = new long[this.values.length];
+					for (int i = 0; i < this.size; i++) {
+						timestamps[i] = this.timestamps[order[i]];
+						values[i] = this.values[order[i]];
+					}
+					this.timestamps = timestamps;
+					this.values = values;
+					this.needSort = false;
+				}
+				this.size = 0;
+			}
+		}
+
+		private final HttpServer server;
+		private final Map<String, Entry> cache = new HashMap<>();
+
+		private StandIn() throws IOException {
+			this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+			this.server.createContext("/write", this::write);
+			this.server.start();
+		}
+
+		private int getPort() {
+			return this.server.getAddress().getPort();
+		}
+
+		private void write(HttpExchange exchange) throws IOException {
+			byte[] body;
+			try (InputStream in = exchange.getRequestBody()) {
+				body = readAll(in);
+			}
+			for (String line : new String(body, StandardCharsets.UTF_8).split("\n")) {
+				int fieldsStart = line.indexOf(' ');
+				int timestampStart = line.lastIndexOf(' ');
+				String series = line.substring(0, fieldsStart);
+				long timestamp = Long.parseLong(line.substring(timestampStart + 1));
+				for (String field : line.substring(fieldsStart + 1, timestampStart).split(",")) {
+					int equals = field.indexOf('=');
+					long value = Long.parseLong(field.substring(equals + 1, field.length() - 1));
+					this.cache.computeIfAbsent(series + " " + field.substring(0, equals), key -> new Entry())
+							.add(timestamp, value);
+				}
+			}
+			for (Entry entry : this.cache.values()) {
+				entry.snapshot();
+			}
+			exchange.sendResponseHeaders(204, -1);
+			exchange.close();
+		}
+
+		private void stop() {
+			this.server.stop(0);
+		}
+
+		private static byte[] readAll(InputStream in) throws IOException {
+			byte[] result = new byte[64 * 1024];
+			int size = 0;
+			int read;
+			while ((read = in.read(result, size, result.length - size)) > 0) {
+				size += read;
+				if (size == result.length) {
+					result = Arrays.copyOf(result, size * 2);
+				}
+			}
+			return Arrays.copyOf(result, size);
+		}
+	}
+
+	@Param({ "true", "false" })
+	public boolean ordered;
+
+	private StandIn standIn;
+	private LineProtocol lineProtocol;
+
+	@Setup
+	public void setup() throws Exception {
+		this.standIn = new StandIn();
+		Settings.INFLUX_URL = "http://localhost:" + this.standIn.getPort();
+
+		Converter converter = new Converter(Types.OPENEMS_V1);
+		Converter.Plan plan = converter.compile(BenchmarkData.getThings());
+		ChunkData data = Influx.queryResultToList(converter.DICTIONARY,
+				BenchmarkData.getQueryResult(converter.CHANNELS, ROWS, 1));
+
+		int[] rows = new int[data.size()];
+		for (int i = 0; i < rows.length; i++) {
+			rows[i] = i;
+		}
+		if (!this.ordered) {
+			Random random = new Random(0);
+			for (int i = rows.length - 1; i > 0; i--) {
+				int j = random.nextInt(i + 1);
+				int row = rows[i];
+				rows[i] = rows[j];
+				rows[j] = row;
+			}
+		}
+
+		this.lineProtocol = new LineProtocol();
+		this.lineProtocol.start(new Settings().INFLUX_TARGET_MEASUREMENT, "fems", "0",
+				LineProtocol.getPrecision(data));
+		FieldBuffer fields = plan.createBuffer();
+		ChunkData.Row row = data.row();
+		for (int i : rows) {
+			row.setRow(i);
+			fields.clear();
+			plan.apply(row, fields);
+			if (!fields.isEmpty()) {
+				this.lineProtocol.add(fields, row.getTimestamp());
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.lineProtocol.close();
+		InfluxPool.close();
+		this.standIn.stop();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void write() throws Exception {
+		Influx.write(this.lineProtocol, null);
+	}
+}
@@ -1,20 +1,29 @@
 package dbconverter;
 
 import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.influxdb.dto.BatchPoints;
-import org.influxdb.dto.QueryResult;
-
 import dbconverter.Settings.Types;
 import dbconverter.Utils.Things;
 import dbconverter.influx.Influx;
+import dbconverter.influx.InfluxPool;
+import dbconverter.odoo.ConfigCache;
+import dbconverter.odoo.Domain;
 import dbconverter.odoo.Odoo;
+import dbconverter.odoo.OdooPool;
 
 public class App {
 
@@ -26,6 +35,12 @@ public class App {
 //	public final static Types TYPE = Types.DESS;
 	public final static Types TYPE = Types.OPENEMS_V1;
 
+	/**
+	 * Converts all FEMS that match this Odoo domain instead of {@link #FEMS}, e.g.
+	 * 'producttype,=,Pro_Hybrid_10-Serie'; several domains are separated by ';'.
+	 */
+	private static String FEMS_DOMAIN = "";
+
 //	private static String FROM_DATE = "2018-10-30T00:00:00";
 	private static String FROM_DATE = "";
 //	private static String TO_DATE = "2019-09-30T00:00:00";
@@ -36,6 +51,9 @@ public class App {
 
 	private static boolean PRODUCTION = true;
 	private static int RETRY_COUNT = 2;
+	private static int PARALLELISM = 1;
+	private static boolean RESUME = false;
+	private static boolean SKIP_COVERED = false;
 
 	public static boolean OVERWRITE = false;
 
@@ -43,83 +61,195 @@ public class App {
 
 		parseArgs(args);
 
+		try {
+			run();
+		} finally {
+			InfluxPool.close();
+			OdooPool.close();
+		}
+	}
+
+	private static void run() throws Exception {
 		Converter converter = new Converter();
 		Settings settings = new Settings();
 
+		// Get the configs of the whole fleet at once; optionally discover the fleet.
+		// Otherwise the configs are prefetched while the conversion runs.
+		Map<Integer, CompletableFuture<EdgeConfig>> configs = new HashMap<>();
+		if (TYPE == Types.OPENEMS_V1) {
+			if (FEMS_DOMAIN.isEmpty()) {
+				configs = Odoo.getConfigsAsync(FEMS);
+			} else {
+				for (Entry<Integer, EdgeConfig> entry : Odoo.getConfigs(parseDomains(FEMS_DOMAIN)).entrySet()) {
+					configs.put(entry.getKey(), CompletableFuture.completedFuture(entry.getValue()));
+				}
+				FEMS = configs.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+				System.out.println("Found " + FEMS.length + " FEMS in Odoo");
+			}
+		}
+
+		// Find the first timestamps of the whole fleet at once
+		if (FROM_DATE.isEmpty()) {
+			FirstTimestamps.discover(FEMS);
+		}
+
+		// Run every FEMS as a task on a bounded pool
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(PARALLELISM, 1));
+		Map<Integer, Future<List<Utils.TimeChunk>>> tasks = new LinkedHashMap<>();
+		Map<Integer, Exception> failures = new ConcurrentHashMap<>();
 		for (int femsId : FEMS) {
-			System.out.println(femsId + ": Starting");
+			Future<EdgeConfig> config = configs.get(femsId);
+			tasks.put(femsId, executor.submit(() -> runFems(femsId, config, converter, settings, failures)));
+		}
+		executor.shutdown();
 
-			// Get configuration
-			Things things = null;
-			if (TYPE == Types.OPENEMS_V1) {
-				EdgeConfig config = Odoo.getConfig(femsId);
-				things = Utils.getThings(config);
+		// Wait for all FEMS; a failed FEMS does not stop the others
+		Map<Integer, List<Utils.TimeChunk>> ignoredChunks = new LinkedHashMap<>();
+		for (Entry<Integer, Future<List<Utils.TimeChunk>>> task : tasks.entrySet()) {
+			try {
+				ignoredChunks.put(task.getKey(), task.getValue().get());
+			} catch (ExecutionException e) {
+				Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+				Utils.printStackTrace(task.getKey(), cause);
+				failures.put(task.getKey(), cause);
+			} catch (InterruptedException e) {
+				executor.shutdownNow();
+				throw e;
 			}
+		}
 
-			// Get start/end date
-			ZonedDateTime initialFromDate = Utils.getFromDate(femsId, FROM_DATE);
-			ZonedDateTime initialToDate = Utils.getToDate(TO_DATE);
-
-			List<Utils.TimeChunk> timeChunks = Utils.getTimeChunks(initialFromDate, initialToDate, CHUNK_DAYS,
-					CHUNK_HOURS);
-
-			List<Utils.TimeChunk> ignoredChunks = new ArrayList<>();
-			int errors = 0;
-			for (int i = 0; i < timeChunks.size(); i++) {
-				Utils.TimeChunk timeChunk = timeChunks.get(i);
-				try {
-					System.out.println(
-							femsId + ": Period: " + timeChunk.fromDate.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)
-									+ " - " + timeChunk.toDate.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-
-					// Run Logic for every time chunk
-					QueryResult queryResult = Influx.query(femsId, timeChunk.fromDate.minusSeconds(1),
-							timeChunk.toDate.plusSeconds(1), settings.INFLUX_SOURCE_MEASUREMENT, converter.CHANNELS);
-					Map<Long, Map<String, Object>> data;
-					if (settings.INFLUX_SOURCE_MEASUREMENT == settings.INFLUX_TARGET_MEASUREMENT) {
-						data = Influx.queryResultToList(queryResult);
-					} else {
-						// if source and target measurement are different: combine both
-						QueryResult queryResult1 = Influx.query(femsId, timeChunk.fromDate.minusSeconds(1),
-								timeChunk.toDate.plusSeconds(1), settings.INFLUX_TARGET_MEASUREMENT,
-								converter.CHANNELS);
-						data = Influx.queryResultToList(queryResult, queryResult1);
-					}
-
-					BatchPoints batchPoints = Influx.createBatchPoints(femsId, things, data, converter.FUNCTION);
-					if (batchPoints != null) {
-						Influx.write(batchPoints);
-					}
-				} catch (Exception e) {
-					if (!PRODUCTION) {
-						throw e;
-					}
-					System.out.println(e.getMessage());
-					if (errors < RETRY_COUNT) {
-						errors++;
-						System.out.println(femsId + ": retrying with same period...");
-						i--;
-					} else {
-						e.printStackTrace();
-						errors = 0;
-						ignoredChunks.add(timeChunk);
-						System.out.println(femsId + ": too many errors with same period...continuing with next period");
-					}
-					continue;
+		// Summary of the run
+		System.out.println("Summary:");
+		List<Integer> failed = new ArrayList<>();
+		for (int femsId : tasks.keySet()) {
+			Exception failure = failures.get(femsId);
+			List<Utils.TimeChunk> chunks = ignoredChunks.get(femsId);
+			if (failure != null) {
+				failed.add(femsId);
+				System.out.println(femsId + ": Failed: " + failure.getMessage());
+			} else if (chunks.isEmpty()) {
+				System.out.println(femsId + ": OK");
+			} else {
+				System.out.println(femsId + ": " + chunks.size() + " ignored periods");
+				for (Utils.TimeChunk c : chunks) {
+					System.out.println(femsId + ":   " + c);
 				}
-				errors = 0;
 			}
+		}
+		if (!failed.isEmpty()) {
+			throw new Exception(failed.size() + " of " + tasks.size() + " FEMS failed: " + failed,
+					failures.get(failed.get(0)));
+		}
+	}
 
-			System.out.println(femsId + ": Finished.");
-			if (ignoredChunks.size() != 0) {
-				System.out.println(femsId
-						+ ": The following periods could not be processed due to some errors (view log for details):");
-				for (Utils.TimeChunk c : ignoredChunks) {
-					System.out.println(c);
+	/**
+	 * Converts all data of one FEMS.
+	 * 
+	 * @param femsId    the FEMS-ID
+	 * @param config    the future config of the FEMS; null if not needed
+	 * @param converter the Converter
+	 * @param settings  the Settings
+	 * @param failures  collects the error if the FEMS fails in production mode
+	 * @return the time chunks that could not be processed
+	 * @throws Exception on error
+	 */
+	private static List<Utils.TimeChunk> runFems(int femsId, Future<EdgeConfig> config, Converter converter,
+			Settings settings, Map<Integer, Exception> failures) throws Exception {
+		System.out.println(femsId + ": Starting");
+
+		// Get configuration
+		Things things = null;
+		if (TYPE == Types.OPENEMS_V1) {
+			try {
+				things = Utils.getThings(config.get());
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof Exception) {
+					throw (Exception) e.getCause();
 				}
+				throw e;
+			}
+		}
+
+		// Compile the conversion; fails early on unknown factories
+		Converter.Plan plan;
+		try {
+			plan = converter.compile(things);
+		} catch (Exception e) {
+			if (!PRODUCTION) {
+				throw e;
+			}
+			Utils.printStackTrace(femsId, e);
+			failures.put(femsId, e);
+			return new ArrayList<>();
+		}
+		if (plan.getInputChannels().isEmpty()) {
+			System.out.println(femsId + ": Nothing to convert.");
+			return new ArrayList<>();
+		}
+		System.out.println(femsId + ": Querying " + plan.getInputChannels().size() + " of "
+				+ converter.CHANNELS.size() + " channels");
+
+		// Get start/end date; continue after the checkpoint if resuming
+		String conversion = TYPE + " " + settings.INFLUX_SOURCE_MEASUREMENT + " -> "
+				+ settings.INFLUX_TARGET_MEASUREMENT;
+		String configuration = conversion + " from '" + FROM_DATE + "' to '" + TO_DATE + "' overwrite " + OVERWRITE;
+		Checkpoint checkpoint = RESUME ? Checkpoint.load(femsId, configuration)
+				: new Checkpoint(femsId, configuration);
+		Coverage coverage = Coverage.load(femsId, conversion);
+		ZonedDateTime initialToDate = Utils.getToDate(TO_DATE);
+		ZonedDateTime initialFromDate;
+		if (checkpoint.getDate() != null) {
+			initialFromDate = checkpoint.getDate();
+			if (initialFromDate.isAfter(initialToDate)) {
+				initialFromDate = initialToDate;
+			}
+			System.out.println(femsId + ": Resuming at " + initialFromDate + "; retrying "
+					+ checkpoint.getIgnoredChunks().size() + " ignored periods");
+		} else {
+			initialFromDate = Utils.getFromDate(femsId, FROM_DATE);
+		}
+
+		ChunkPlanner planner = new ChunkPlanner(initialFromDate, initialToDate, CHUNK_DAYS, CHUNK_HOURS);
+		planner.retry(checkpoint.getIgnoredChunks());
+		if (SKIP_COVERED) {
+			planner.skip(coverage);
+		}
+
+		ChunkPipeline pipeline = new ChunkPipeline(femsId, converter, plan, settings, RETRY_COUNT, PRODUCTION,
+				checkpoint, coverage);
+		List<Utils.TimeChunk> ignoredChunks = pipeline.run(planner);
+
+		System.out.println(femsId + ": Finished.");
+		if (ignoredChunks.size() != 0) {
+			System.out.println(femsId
+					+ ": The following periods could not be processed due to some errors (view log for details):");
+			for (Utils.TimeChunk c : ignoredChunks) {
+				System.out.println(femsId + ": " + c);
 			}
 		}
+		return ignoredChunks;
+	}
 
+	/**
+	 * Parses Odoo domains in the format 'field,operator,value;...'. Integer and
+	 * Boolean values are converted.
+	 */
+	private static Domain[] parseDomains(String domains) throws Exception {
+		List<Domain> result = new ArrayList<>();
+		for (String domain : domains.split(";")) {
+			String[] parts = domain.split(",", 3);
+			if (parts.length != 3) {
+				throw new Exception("illegal domain: " + domain);
+			}
+			Object value = parts[2];
+			if (parts[2].matches("-?\\d+")) {
+				value = Integer.parseInt(parts[2]);
+			} else if (parts[2].equals("true") || parts[2].equals("false")) {
+				value = Boolean.parseBoolean(parts[2]);
+			}
+			result.add(new Domain(parts[0], parts[1], value));
+		}
+		return result.toArray(new Domain[result.size()]);
 	}
 
 	private static void parseArgs(String[] args) throws Exception {
@@ -131,6 +261,9 @@ public class App {
 				case "FEMS":
 					FEMS = new int[] { Integer.parseInt(v) };
 					break;
+				case "FEMS_DOMAIN":
+					FEMS_DOMAIN = v;
+					break;
 				case "FROM_DATE":
 					FROM_DATE = v;
 					break;
@@ -161,6 +294,87 @@ public class App {
 				case "CHUNK_HOURS":
 					CHUNK_HOURS = Integer.parseInt(v);
 					break;
+				case "ADAPTIVE_CHUNKS":
+					ChunkPlanner.ADAPTIVE = Boolean.parseBoolean(v);
+					break;
+				case "MIN_CHUNK_MINUTES":
+					ChunkPlanner.MIN_CHUNK_MINUTES = Integer.parseInt(v);
+					break;
+				case "MAX_CHUNK_HOURS":
+					ChunkPlanner.MAX_CHUNK_HOURS = Integer.parseInt(v);
+					break;
+				case "TARGET_CHUNK_POINTS":
+					ChunkPlanner.TARGET_POINTS = Integer.parseInt(v);
+					break;
+				case "TARGET_CHUNK_LATENCY":
+					ChunkPlanner.TARGET_LATENCY_MILLIS = Integer.parseInt(v);
+					break;
+				case "PARALLELISM":
+					PARALLELISM = Integer.parseInt(v);
+					break;
+				case "PIPELINE_QUEUE_SIZE":
+					ChunkPipeline.QUEUE_SIZE = Integer.parseInt(v);
+					break;
+				case "QUERY_CHUNK_SIZE":
+					Influx.QUERY_CHUNK_SIZE = Integer.parseInt(v);
+					break;
+				case "INFLUX_POOL_SIZE":
+					InfluxPool.POOL_SIZE = Integer.parseInt(v);
+					break;
+				case "INFLUX_KEEP_ALIVE":
+					InfluxPool.KEEP_ALIVE_SECONDS = Integer.parseInt(v);
+					break;
+				case "WRITE_BATCH_POINTS":
+					Influx.WRITE_BATCH_POINTS = Integer.parseInt(v);
+					break;
+				case "WRITE_BATCH_BYTES":
+					Influx.WRITE_BATCH_BYTES = Integer.parseInt(v);
+					break;
+				case "RESUME":
+					RESUME = Boolean.parseBoolean(v);
+					break;
+				case "CHECKPOINT_DIR":
+					Checkpoint.DIRECTORY = v;
+					break;
+				case "SKIP_COVERED":
+					SKIP_COVERED = Boolean.parseBoolean(v);
+					break;
+				case "COVERAGE_DIR":
+					Coverage.DIRECTORY = v;
+					break;
+				case "FIRST_TIMESTAMPS_FILE":
+					FirstTimestamps.FILE = v;
+					break;
+				case "FIRST_TIMESTAMPS_BATCH_SIZE":
+					FirstTimestamps.BATCH_SIZE = Integer.parseInt(v);
+					break;
+				case "OFFLINE_CONFIG":
+					ConfigCache.OFFLINE = Boolean.parseBoolean(v);
+					break;
+				case "CONFIG_TTL_HOURS":
+					ConfigCache.TTL_HOURS = Integer.parseInt(v);
+					break;
+				case "CONFIG_CACHE_DIR":
+					ConfigCache.DIRECTORY = v;
+					break;
+				case "ODOO_PAGE_SIZE":
+					Odoo.PAGE_SIZE = Integer.parseInt(v);
+					break;
+				case "ODOO_POOL_SIZE":
+					OdooPool.POOL_SIZE = Integer.parseInt(v);
+					break;
+				case "ODOO_KEEP_ALIVE":
+					OdooPool.KEEP_ALIVE_SECONDS = Integer.parseInt(v);
+					break;
+				case "ODOO_CONNECT_TIMEOUT":
+					OdooPool.CONNECT_TIMEOUT_MILLIS = Integer.parseInt(v);
+					break;
+				case "ODOO_REPLY_TIMEOUT":
+					OdooPool.REPLY_TIMEOUT_MILLIS = Integer.parseInt(v);
+					break;
+				case "INFLUX_GZIP":
+					InfluxPool.GZIP = Boolean.parseBoolean(v);
+					break;
 				default:
 					throw new Exception("illegal parameter: " + m.group(0));
 				}
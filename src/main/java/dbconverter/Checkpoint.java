@@ -0,0 +1,173 @@
+package dbconverter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import dbconverter.Utils.TimeChunk;
+
+/**
+ * Records the progress of the conversion of one FEMS on disk, so that an
+ * interrupted run can be continued with '-RESUME=true'.
+ *
+ * <p>
+ * A Checkpoint holds the date before which every time chunk was either
+ * written or ignored, and the ignored time chunks. It is saved after every
+ * finished chunk; the file is replaced atomically. Checkpoints are kept per
+ * FEMS and run configuration, so a run with different settings does not
+ * resume from the progress of another one.
+ */
+public class Checkpoint implements ChunkPipeline.Listener {
+
+	/**
+	 * Directory of the checkpoint files.
+	 */
+	public static String DIRECTORY = "checkpoints";
+
+	private final int femsId;
+	private final String configuration;
+	private final Path path;
+
+	private ZonedDateTime date = null;
+	private final List<TimeChunk> ignoredChunks = new ArrayList<>();
+
+	// chunks that were started but not finished yet, by fromDate
+	private final TreeMap<ZonedDateTime, TimeChunk> running = new TreeMap<>();
+	// the end of the latest finished chunk
+	private ZonedDateTime latest = null;
+
+	/**
+	 * Creates an empty Checkpoint; it replaces an existing one on first save.
+	 *
+	 * @param femsId        the FEMS-ID
+	 * @param configuration describes the run configuration
+	 */
+	public Checkpoint(int femsId, String configuration) {
+		this.femsId = femsId;
+		this.configuration = configuration;
+		this.path = Paths.get(DIRECTORY,
+				femsId + "-" + String.format("%08x", configuration.hashCode()) + ".json");
+	}
+
+	/**
+	 * Loads the Checkpoint of the FEMS and run configuration.
+	 *
+	 * @param femsId        the FEMS-ID
+	 * @param configuration describes the run configuration
+	 * @return the Checkpoint; empty if none was saved yet
+	 * @throws Exception on error
+	 */
+	public static Checkpoint load(int femsId, String configuration) throws Exception {
+		Checkpoint result = new Checkpoint(femsId, configuration);
+		if (!Files.exists(result.path)) {
+			return result;
+		}
+		JsonObject json = JsonUtils
+				.parseToJsonObject(new String(Files.readAllBytes(result.path), StandardCharsets.UTF_8));
+		if (JsonUtils.getAsInt(json, "femsId") != femsId
+				|| !JsonUtils.getAsString(json, "configuration").equals(configuration)) {
+			// hash collision
+			return new Checkpoint(femsId, configuration);
+		}
+		result.date = ZonedDateTime.parse(JsonUtils.getAsString(json, "date"));
+		for (JsonElement element : JsonUtils.getAsJsonArray(json, "ignoredChunks")) {
+			TimeChunk chunk = new TimeChunk();
+			chunk.fromDate = ZonedDateTime.parse(JsonUtils.getAsString(element, "fromDate"));
+			chunk.toDate = ZonedDateTime.parse(JsonUtils.getAsString(element, "toDate"));
+			result.ignoredChunks.add(chunk);
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the date before which every time chunk was processed.
+	 *
+	 * @return the date; null if nothing was processed yet
+	 */
+	public synchronized ZonedDateTime getDate() {
+		return this.date;
+	}
+
+	public synchronized List<TimeChunk> getIgnoredChunks() {
+		return new ArrayList<>(this.ignoredChunks);
+	}
+
+	@Override
+	public synchronized void started(TimeChunk chunk) {
+		this.running.put(chunk.fromDate, chunk);
+	}
+
+	/**
+	 * Marks the chunk as written and saves the Checkpoint.
+	 *
+	 * @param chunk the time chunk
+	 */
+	@Override
+	public synchronized void finished(TimeChunk chunk) {
+		this.ignoredChunks.removeIf(c -> isSame(c, chunk));
+		this.done(chunk);
+	}
+
+	/**
+	 * Marks the chunk as ignored and saves the Checkpoint.
+	 *
+	 * @param chunk the time chunk
+	 */
+	@Override
+	public synchronized void ignored(TimeChunk chunk) {
+		if (this.ignoredChunks.stream().noneMatch(c -> isSame(c, chunk))) {
+			this.ignoredChunks.add(chunk);
+			this.ignoredChunks.sort((c1, c2) -> c1.fromDate.compareTo(c2.fromDate));
+		}
+		this.done(chunk);
+	}
+
+	private void done(TimeChunk chunk) {
+		this.running.remove(chunk.fromDate);
+		if (this.latest == null || chunk.toDate.isAfter(this.latest)) {
+			this.latest = chunk.toDate;
+		}
+		// everything before the earliest running chunk is done; never move back,
+		// e.g. while previously ignored chunks are retried
+		ZonedDateTime date = this.running.isEmpty() ? this.latest : this.running.firstKey();
+		if (this.date == null || date.isAfter(this.date)) {
+			this.date = date;
+		}
+		this.save();
+	}
+
+	private void save() {
+		JsonArray ignoredChunks = new JsonArray();
+		for (TimeChunk chunk : this.ignoredChunks) {
+			ignoredChunks.add(JsonUtils.buildJsonObject() //
+					.addProperty("fromDate", chunk.fromDate.toString()) //
+					.addProperty("toDate", chunk.toDate.toString()) //
+					.build());
+		}
+		JsonObject json = JsonUtils.buildJsonObject() //
+				.addProperty("femsId", this.femsId) //
+				.addProperty("configuration", this.configuration) //
+				.addProperty("date", this.date.toString()) //
+				.add("ignoredChunks", ignoredChunks) //
+				.build();
+		try {
+			Utils.writeAtomically(this.path, json.toString());
+		} catch (IOException e) {
+			System.out.println(this.femsId + ": Unable to save checkpoint: " + e.getMessage());
+		}
+	}
+
+	private static boolean isSame(TimeChunk c1, TimeChunk c2) {
+		return c1.fromDate.isEqual(c2.fromDate) && c1.toDate.isEqual(c2.toDate);
+	}
+}
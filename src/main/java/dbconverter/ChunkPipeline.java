@@ -0,0 +1,415 @@
+package dbconverter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.influxdb.dto.QueryResult;
+
+import dbconverter.Utils.TimeChunk;
+import dbconverter.influx.ChunkData;
+import dbconverter.influx.Influx;
+import dbconverter.influx.LineProtocol;
+import dbconverter.influx.Traffic;
+
+/**
+ * Runs the time chunks of one FEMS through three stages - query, convert and
+ * write - that are connected by bounded queues.
+ *
+ * <p>
+ * The query stage streams every chunk from Influx in batches of
+ * {@link Influx#QUERY_CHUNK_SIZE} rows, so while one batch is converted, the
+ * next one is already queried and the previous one is written. A chunk that
+ * fails in any stage is handed back to the query stage and retried from
+ * scratch up to 'retryCount' times; after that it is reported as ignored.
+ *
+ * <p>
+ * If source and target measurement differ and existing values are kept, the
+ * target measurement is queried for the period of every batch in a background
+ * thread while the query stage continues with the source query; the convert
+ * stage combines both.
+ */
+public class ChunkPipeline {
+
+	/**
+	 * Number of batches that may wait between two stages.
+	 */
+	public static int QUEUE_SIZE = 2;
+
+	/**
+	 * Is notified about the progress of the time chunks.
+	 */
+	public static interface Listener {
+
+		/**
+		 * Called when a new time chunk is taken from the ChunkPlanner.
+		 *
+		 * @param chunk the time chunk
+		 */
+		public default void started(TimeChunk chunk) {
+		}
+
+		/**
+		 * Called when all Points of the time chunk were written.
+		 *
+		 * @param chunk the time chunk
+		 */
+		public void finished(TimeChunk chunk);
+
+		/**
+		 * Called when the time chunk is given up after too many errors.
+		 *
+		 * @param chunk the time chunk
+		 */
+		public default void ignored(TimeChunk chunk) {
+		}
+	}
+
+	/**
+	 * One attempt to process a time chunk.
+	 */
+	private static class Job {
+		private final TimeChunk timeChunk;
+		private final int errors;
+		private final AtomicBoolean failed = new AtomicBoolean(false);
+		private final AtomicInteger points = new AtomicInteger(0);
+		private final Traffic queried = new Traffic();
+		private final Traffic written = new Traffic();
+		private int rows = 0;
+
+		private Job(TimeChunk timeChunk, int errors) {
+			this.timeChunk = timeChunk;
+			this.errors = errors;
+		}
+	}
+
+	/**
+	 * Part of the data of a Job. The last Batch of every Job carries no data and
+	 * marks the Job as completely queried.
+	 */
+	private static class Batch {
+		private final Job job;
+		private final boolean last;
+		private QueryResult source;
+		private Future<QueryResult> target = null;
+		private LineProtocol lineProtocol = null;
+
+		private Batch(Job job, QueryResult source, boolean last) {
+			this.job = job;
+			this.source = source;
+			this.last = last;
+		}
+	}
+
+	private final static Batch END = new Batch(null, null, true);
+
+	private final int femsId;
+	private final Converter converter;
+	private final Converter.Plan plan;
+	private final Settings settings;
+	private final int retryCount;
+	private final boolean production;
+	private final Listener[] listeners;
+
+	private final BlockingQueue<Batch> toConvert = new ArrayBlockingQueue<>(Math.max(QUEUE_SIZE, 1));
+	private final BlockingQueue<Batch> toWrite = new ArrayBlockingQueue<>(Math.max(QUEUE_SIZE, 1));
+	private final BlockingQueue<Job> retries = new LinkedBlockingQueue<>();
+	private final AtomicInteger pending = new AtomicInteger(0);
+	private final AtomicReference<Exception> fatal = new AtomicReference<>(null);
+	private final List<TimeChunk> ignoredChunks = Collections.synchronizedList(new ArrayList<>());
+	// LineProtocol buffers that are free for reuse by the convert stage
+	private final Queue<LineProtocol> lineProtocols = new ConcurrentLinkedQueue<>();
+	// runs the queries of the target measurement
+	private final ExecutorService targetQueries;
+
+	public ChunkPipeline(int femsId, Converter converter, Converter.Plan plan, Settings settings, int retryCount,
+			boolean production, Listener... listeners) {
+		this.femsId = femsId;
+		this.converter = converter;
+		this.plan = plan;
+		this.settings = settings;
+		this.retryCount = retryCount;
+		this.production = production;
+		this.listeners = listeners;
+		this.targetQueries = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, femsId + "-target");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Processes all time chunks of the given planner.
+	 *
+	 * @param planner the ChunkPlanner
+	 * @return the time chunks that could not be processed
+	 * @throws Exception on error if not in production mode
+	 */
+	public List<TimeChunk> run(ChunkPlanner planner) throws Exception {
+		Thread convertStage = new Thread(this::convertStage, this.femsId + "-convert");
+		Thread writeStage = new Thread(this::writeStage, this.femsId + "-write");
+		convertStage.setDaemon(true);
+		writeStage.setDaemon(true);
+		convertStage.start();
+		writeStage.start();
+		try {
+			this.queryStage(planner);
+		} finally {
+			this.toConvert.put(END);
+			convertStage.join();
+			writeStage.join();
+			this.targetQueries.shutdownNow();
+			this.closeLineProtocols();
+		}
+
+		if (this.fatal.get() != null) {
+			throw this.fatal.get();
+		}
+		List<TimeChunk> result = new ArrayList<>(this.ignoredChunks);
+		result.sort((c1, c2) -> c1.fromDate.compareTo(c2.fromDate));
+		return result;
+	}
+
+	private void queryStage(ChunkPlanner planner) throws InterruptedException {
+		while (this.fatal.get() == null) {
+			// retried chunks go first
+			Job job = this.retries.poll();
+			if (job == null) {
+				TimeChunk timeChunk = planner.next();
+				if (timeChunk != null) {
+					job = new Job(timeChunk, 0);
+					this.pending.incrementAndGet();
+					for (Listener listener : this.listeners) {
+						listener.started(timeChunk);
+					}
+				} else if (this.pending.get() == 0) {
+					break;
+				} else {
+					// wait for the other stages to finish or to hand back a chunk
+					job = this.retries.poll(100, TimeUnit.MILLISECONDS);
+					if (job == null) {
+						continue;
+					}
+				}
+			}
+
+			TimeChunk timeChunk = job.timeChunk;
+			try {
+				System.out.println(this.femsId + ": Period: " + timeChunk);
+
+				long start = System.currentTimeMillis();
+				long blocked = this.query(job);
+				planner.feedback(timeChunk, job.rows, System.currentTimeMillis() - start - blocked);
+			} catch (InterruptedException e) {
+				throw e;
+			} catch (Exception e) {
+				planner.failed(timeChunk);
+				this.failed(job, e);
+				continue;
+			}
+			this.toConvert.put(new Batch(job, null, true));
+		}
+	}
+
+	/**
+	 * Streams the data of the Job to the convert stage. Only the channels that
+	 * the Plan reads are queried.
+	 *
+	 * @param job the Job
+	 * @return the milliseconds spent waiting for the convert stage
+	 * @throws Exception on error
+	 */
+	private long query(Job job) throws Exception {
+		TimeChunk timeChunk = job.timeChunk;
+		long[] blocked = new long[] { 0 };
+		// if source and target measurement are different: combine both, unless
+		// existing values are overwritten anyway
+		boolean queryTarget = this.settings.INFLUX_SOURCE_MEASUREMENT != this.settings.INFLUX_TARGET_MEASUREMENT
+				&& !this.plan.getExistingChannels().isEmpty();
+		Influx.query(this.femsId, timeChunk.fromDate.minusSeconds(1), timeChunk.toDate.plusSeconds(1),
+				this.settings.INFLUX_SOURCE_MEASUREMENT, this.plan.getInputChannels(), job.queried, queryResult -> {
+					if (job.failed.get()) {
+						throw new Exception("Stopped after error in a later stage");
+					}
+					Batch batch = new Batch(job, queryResult, false);
+					long[] range = Influx.getTimeRange(queryResult);
+					if (queryTarget && range != null) {
+						batch.target = this.targetQueries.submit(() -> Influx.query(this.femsId, range[0], range[1],
+								this.settings.INFLUX_TARGET_MEASUREMENT, this.plan.getExistingChannels(), job.queried));
+					}
+					// count rows for the ChunkPlanner
+					job.rows += Influx.getRowCount(queryResult);
+
+					long putStart = System.currentTimeMillis();
+					this.toConvert.put(batch);
+					blocked[0] += System.currentTimeMillis() - putStart;
+				});
+		return blocked[0];
+	}
+
+	private void convertStage() {
+		try {
+			Batch batch;
+			while ((batch = this.toConvert.take()) != END) {
+				if (this.fatal.get() != null || batch.job.failed.get()) {
+					if (batch.target != null) {
+						batch.target.cancel(true);
+					}
+					continue;
+				}
+				if (!batch.last) {
+					try {
+						LineProtocol lineProtocol = this.lineProtocols.poll();
+						if (lineProtocol == null) {
+							lineProtocol = new LineProtocol();
+						}
+						batch.lineProtocol = lineProtocol;
+						ChunkData data;
+						if (batch.target != null) {
+							data = Influx.queryResultToList(this.converter.DICTIONARY, batch.source, getTarget(batch));
+						} else {
+							data = Influx.queryResultToList(this.converter.DICTIONARY, batch.source);
+						}
+						batch.source = null;
+						batch.target = null;
+						Influx.encode(this.femsId, data, this.plan, lineProtocol);
+					} catch (InterruptedException e) {
+						throw e;
+					} catch (Exception e) {
+						this.failed(batch.job, e);
+						this.recycle(batch);
+						continue;
+					}
+				}
+				this.toWrite.put(batch);
+			}
+			this.toWrite.put(END);
+		} catch (InterruptedException e) {
+			this.fatal.compareAndSet(null, e);
+		}
+	}
+
+	private void writeStage() {
+		try {
+			Batch batch;
+			while ((batch = this.toWrite.take()) != END) {
+				Job job = batch.job;
+				if (this.fatal.get() != null || job.failed.get()) {
+					this.recycle(batch);
+					continue;
+				}
+				if (batch.last) {
+					// every Batch of this Job was written
+					System.out.println(this.femsId + ":   Number of Points: " + job.points.get());
+					System.out.println(this.femsId + ":   Queried: " + job.queried + "; Written: " + job.written);
+					for (Listener listener : this.listeners) {
+						listener.finished(job.timeChunk);
+					}
+					this.pending.decrementAndGet();
+					continue;
+				}
+				try {
+					Influx.write(batch.lineProtocol, job.written);
+					job.points.addAndGet(batch.lineProtocol.getLines());
+				} catch (Exception e) {
+					this.failed(job, e);
+				} finally {
+					this.recycle(batch);
+				}
+			}
+		} catch (InterruptedException e) {
+			this.fatal.compareAndSet(null, e);
+		}
+	}
+
+	/**
+	 * Waits for the result of the target query of the Batch.
+	 *
+	 * @param batch the Batch
+	 * @return the QueryResult
+	 * @throws Exception           on error of the query
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private static QueryResult getTarget(Batch batch) throws Exception {
+		try {
+			return batch.target.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Hands the LineProtocol buffer of the Batch back for reuse.
+	 *
+	 * @param batch the Batch
+	 */
+	private void recycle(Batch batch) {
+		if (batch.lineProtocol != null) {
+			this.lineProtocols.add(batch.lineProtocol);
+			batch.lineProtocol = null;
+		}
+	}
+
+	/**
+	 * Closes all LineProtocol buffers after the write stage finished, including
+	 * those of Batches that were left in the queue.
+	 */
+	private void closeLineProtocols() {
+		Batch batch;
+		while ((batch = this.toWrite.poll()) != null) {
+			this.recycle(batch);
+		}
+		LineProtocol lineProtocol;
+		while ((lineProtocol = this.lineProtocols.poll()) != null) {
+			lineProtocol.close();
+		}
+	}
+
+	/**
+	 * Handles an error in any stage: retries the chunk or gives up on it.
+	 * Remaining batches of the failed Job are skipped by all stages.
+	 *
+	 * @param job the failed job
+	 * @param e   the error
+	 */
+	private void failed(Job job, Exception e) {
+		if (!job.failed.compareAndSet(false, true)) {
+			// already handled
+			return;
+		}
+		if (!this.production) {
+			this.fatal.compareAndSet(null, e);
+			return;
+		}
+		System.out.println(this.femsId + ": " + e.getMessage());
+		if (job.errors < this.retryCount) {
+			System.out.println(this.femsId + ": retrying with same period...");
+			this.retries.add(new Job(job.timeChunk, job.errors + 1));
+		} else {
+			Utils.printStackTrace(this.femsId, e);
+			this.ignoredChunks.add(job.timeChunk);
+			for (Listener listener : this.listeners) {
+				listener.ignored(job.timeChunk);
+			}
+			System.out.println(this.femsId + ": too many errors with same period...continuing with next period");
+			this.pending.decrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package dbconverter;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+import dbconverter.Utils.TimeChunk;
+
+/**
+ * Plans the time chunks between fromDate and toDate one after the other.
+ *
+ * <p>
+ * The length of the next chunk is derived from the number of points and the
+ * query latency that were observed for the previous one: sparse periods make
+ * the chunks grow, dense or slow periods make them shrink - always within
+ * {@link #MIN_CHUNK_MINUTES} and {@link #MAX_CHUNK_HOURS}. Chunks that are
+ * added via {@link #retry(Collection)} are planned first, as they are. Ranges
+ * of a {@link Coverage} that is set via {@link #skip(Coverage)} are left out.
+ */
+public class ChunkPlanner {
+
+	/**
+	 * Adapt the chunk length; if false every chunk has the initial length.
+	 */
+	public static boolean ADAPTIVE = true;
+	public static int MIN_CHUNK_MINUTES = 60;
+	public static int MAX_CHUNK_HOURS = 30 * 24;
+	public static int TARGET_POINTS = 50_000;
+	public static int TARGET_LATENCY_MILLIS = 10_000;
+
+	/**
+	 * Maximum factor by which a chunk may grow from one chunk to the next.
+	 */
+	private final static double MAX_GROWTH = 2;
+	/**
+	 * Maximum factor by which a chunk may shrink from one chunk to the next.
+	 */
+	private final static double MAX_SHRINK = 0.25;
+
+	private final ZonedDateTime toDate;
+	private ZonedDateTime fromDate;
+	private Duration duration;
+	private boolean first = true;
+	private final Deque<TimeChunk> retries = new ArrayDeque<>();
+	private Coverage coverage = null;
+	// chunks that are shorter than planned, i.e. retried or cut at toDate or at a
+	// covered range; they must not shrink the following chunks by their length
+	private final Set<TimeChunk> truncated = new HashSet<>();
+
+	public ChunkPlanner(ZonedDateTime fromDate, ZonedDateTime toDate, int chunkDays, int chunkHours) {
+		this.fromDate = fromDate;
+		this.toDate = toDate;
+		Duration duration = Duration.ofDays(chunkDays).plusHours(chunkHours);
+		this.duration = ADAPTIVE ? this.limit(duration) : duration;
+	}
+
+	/**
+	 * Gets the next time chunk.
+	 *
+	 * @return the time chunk; null if the whole period was planned
+	 */
+	public synchronized TimeChunk next() {
+		if (!this.retries.isEmpty()) {
+			TimeChunk chunk = this.retries.poll();
+			this.truncated.add(chunk);
+			return chunk;
+		}
+		if (this.coverage != null) {
+			ZonedDateTime coveredUntil = this.coverage.getCoveredUntil(this.fromDate);
+			if (coveredUntil != null) {
+				this.fromDate = coveredUntil;
+				if (!this.fromDate.isBefore(this.toDate)) {
+					return null;
+				}
+			}
+		}
+		if (!this.first && !this.fromDate.isBefore(this.toDate)) {
+			return null;
+		}
+		this.first = false;
+
+		ZonedDateTime toDate = this.fromDate.plus(this.duration);
+		if (toDate.isAfter(this.toDate)) {
+			toDate = this.toDate;
+		}
+		if (this.coverage != null) {
+			// end the chunk where the next covered range starts
+			ZonedDateTime nextCovered = this.coverage.getNextCovered(this.fromDate);
+			if (nextCovered != null && toDate.isAfter(nextCovered)) {
+				toDate = nextCovered;
+			}
+		}
+		TimeChunk chunk = new TimeChunk();
+		chunk.fromDate = this.fromDate;
+		chunk.toDate = toDate;
+		if (toDate.isBefore(this.fromDate.plus(this.duration))) {
+			this.truncated.add(chunk);
+		}
+		this.fromDate = toDate;
+		return chunk;
+	}
+
+	/**
+	 * Plans the given chunks before the remaining period, e.g. chunks that were
+	 * ignored in a previous run.
+	 *
+	 * @param chunks the time chunks
+	 */
+	public synchronized void retry(Collection<TimeChunk> chunks) {
+		this.retries.addAll(chunks);
+	}
+
+	/**
+	 * Leaves out the ranges that are already covered.
+	 *
+	 * @param coverage the Coverage
+	 */
+	public synchronized void skip(Coverage coverage) {
+		this.coverage = coverage;
+	}
+
+	/**
+	 * Adapts the length of the following chunks to what was observed while
+	 * querying the given chunk. For a chunk that is shorter than planned the
+	 * limits of growth and shrinking are relative to the current length instead
+	 * of the length of the chunk.
+	 *
+	 * @param chunk         the queried time chunk
+	 * @param points        the number of points that were returned
+	 * @param latencyMillis the duration of the query
+	 */
+	public synchronized void feedback(TimeChunk chunk, int points, long latencyMillis) {
+		boolean truncated = this.truncated.remove(chunk);
+		if (!ADAPTIVE) {
+			return;
+		}
+		Duration chunkDuration = Duration.between(chunk.fromDate, chunk.toDate);
+		if (chunkDuration.isZero() || chunkDuration.isNegative()) {
+			return;
+		}
+		double base = chunkDuration.toMillis();
+		if (truncated) {
+			base = Math.max(base, this.duration.toMillis());
+		}
+		// the length that would have hit the targets, within the limits
+		double millis = base * MAX_GROWTH;
+		if (points > 0) {
+			millis = Math.min(millis, chunkDuration.toMillis() * (double) TARGET_POINTS / points);
+		}
+		if (latencyMillis > 0) {
+			millis = Math.min(millis, chunkDuration.toMillis() * (double) TARGET_LATENCY_MILLIS / latencyMillis);
+		}
+		millis = Math.max(millis, base * MAX_SHRINK);
+		this.duration = this.limit(Duration.ofMillis((long) millis));
+	}
+
+	/**
+	 * Shrinks the following chunks after the given chunk failed.
+	 *
+	 * @param chunk the failed time chunk
+	 */
+	public synchronized void failed(TimeChunk chunk) {
+		this.truncated.remove(chunk);
+		if (!ADAPTIVE) {
+			return;
+		}
+		this.duration = this.limit(this.duration.dividedBy(2));
+	}
+
+	private Duration limit(Duration duration) {
+		Duration min = Duration.ofMinutes(MIN_CHUNK_MINUTES);
+		Duration max = Duration.ofHours(MAX_CHUNK_HOURS);
+		if (duration.compareTo(min) < 0) {
+			return min;
+		}
+		if (duration.compareTo(max) > 0) {
+			return max;
+		}
+		return duration;
+	}
+}
@@ -1,19 +1,30 @@
 package dbconverter;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.OptionalDouble;
 import java.util.Set;
+import java.util.TreeSet;
 
 import dbconverter.EdgeConfig.Component;
+import dbconverter.Settings.Types;
+import dbconverter.Utils.Things;
+import dbconverter.influx.ChunkData;
+import dbconverter.influx.FieldBuffer;
 import dbconverter.influx.Influx.PointsFunction;
 
 public class Converter {
 
+	/**
+	 * Version of the conversion; increment it when the output changes, so that
+	 * ranges in the {@link Coverage} index are converted again.
+	 */
+	public final static int VERSION = 1;
+
 	private final static String SUM_ESS_SOC = "_sum/EssSoc";
 	private final static String SUM_ESS_ACTIVE_POWER = "_sum/EssActivePower";
 	private final static String SUM_GRID_ACTIVE_POWER = "_sum/GridActivePower";
@@ -70,8 +81,21 @@ public class Converter {
 	public final static String DESS_CONSUMPTION_L2 = "PCS2_Phase2_Load_Active_Power";
 	public final static String DESS_CONSUMPTION_L3 = "PCS3_Phase3_Load_Active_Power";
 
+	public final Types TYPE;
 	public final Set<String> CHANNELS;
-	{
+	public final ChunkData.Dictionary DICTIONARY;
+
+	public Converter() {
+		this(App.TYPE);
+	}
+
+	public Converter(Types type) {
+		this.TYPE = type;
+		this.CHANNELS = getChannels(type);
+		this.DICTIONARY = new ChunkData.Dictionary(this.CHANNELS);
+	}
+
+	private static Set<String> getChannels(Types type) {
 		Set<String> result = new HashSet<>();
 		result.add(SUM_CONSUMPTION_ACTIVE_POWER);
 		result.add(SUM_ESS_ACTIVE_POWER);
@@ -123,7 +147,7 @@ public class Converter {
 			result.add(String.format(ACTUAL_ENERGY, id));
 		}
 
-		switch (App.TYPE) {
+		switch (type) {
 		case DESS:
 			result.add(DESS_METER0_ACTIVE_POWER_L1);
 			result.add(DESS_METER0_ACTIVE_POWER_L2);
@@ -149,173 +173,287 @@ public class Converter {
 			}
 			break;
 		}
-		CHANNELS = result;
+		return result;
 	}
 
-	public final PointsFunction FUNCTION = (things, input) -> {
-		Map<String, Object> result = new HashMap<>();
-		switch (App.TYPE) {
-		case OPENEMS_V1:
-			convertEssSoc(things.ess, result, input);
-			convertEssPower(things.ess, result, input);
-			convertGridPower(things.gridMeter, result, input);
-			convertProductionAcPower(things.productionMeters, result, input);
-			convertProductionDcPower(things.chargers, result, input);
-			convertEvcs(things.evcs, result, input);
-			sumProductionPower(result, input);
-			sumConsumptionPower(result, input);
-			convertEssActiveChargeEnergy(things.ess, result, input);
-			convertEssActiveDischargeEnergy(things.ess, result, input);
-			convertGridBuyActiveEnergy(things.gridMeter, result, input);
-			convertGridSellActiveEnergy(things.gridMeter, result, input);
-			sumProductionDcActiveEnergy(things.chargers, result, input);
-			sumProductionAcActiveEnergy(things.productionMeters, result, input);
-			sumProductionActiveEnergy(result, input);
-			sumConsumptionActiveEnergy(result, input);
-			break;
-		case DESS:
-			convertDess(result, input);
-			break;
-		}
-//		WARNING! setChannelValueToZero(result, SUM_PRODUCTION_DC_ACTUAL_POWER);
-		return result;
-	};
+	/**
+	 * A single operation of a Plan that is executed for every row.
+	 */
+	@FunctionalInterface
+	private static interface Step {
+		public void apply(ChunkData.Row input, FieldBuffer output);
+	}
+
+	/**
+	 * An output channel of a Plan, resolved to its output slot and - if existing
+	 * values must not be overwritten - to its input column.
+	 */
+	private static class Target {
+		private final int slot;
+		private final int existing;
 
-	private void copyValue(Map<String, Object> result, Map<String, Object> input, String targetChannel, Number sum) {
-		if (sum == null) {
-			return;
+		private Target(int slot, int existing) {
+			this.slot = slot;
+			this.existing = existing;
 		}
+	}
 
-		if (!App.OVERWRITE) {
-			// do nothing if there is already a value
-			Object existing = getValue(input, targetChannel);
-			if (existing != null) {
-				return;
-			}
+	/**
+	 * The conversion for the Things of one FEMS.
+	 *
+	 * <p>
+	 * All channel names and factories are resolved by {@link Converter#compile}
+	 * once, so executing the Plan for a row only works on column indexes and
+	 * output slots.
+	 */
+	public static class Plan implements PointsFunction {
+
+		private final String[] outputChannels;
+		private final Step[] steps;
+		private final Set<String> inputChannels;
+		private final Set<String> existingChannels;
+
+		private Plan(List<String> outputChannels, List<Step> steps, Set<String> inputChannels,
+				Set<String> existingChannels) {
+			this.outputChannels = outputChannels.toArray(new String[outputChannels.size()]);
+			this.steps = steps.toArray(new Step[steps.size()]);
+			this.inputChannels = Collections.unmodifiableSet(new TreeSet<>(inputChannels));
+			this.existingChannels = Collections.unmodifiableSet(new TreeSet<>(existingChannels));
 		}
 
-		// copy value
-		result.put(targetChannel, sum);
-	}
+		/**
+		 * Gets the channels that are read by this Plan, i.e. the channels that need
+		 * to be queried for the FEMS. This is usually a small subset of
+		 * {@link Converter#CHANNELS}.
+		 *
+		 * @return the channel names
+		 */
+		public Set<String> getInputChannels() {
+			return this.inputChannels;
+		}
 
-	private static Integer add(Integer sum, Object value) {
-		if (value == null) {
-			return sum;
+		/**
+		 * Gets the output channels whose existing values are kept, i.e. the
+		 * channels that need to be queried from the target measurement. Empty with
+		 * {@link App#OVERWRITE}.
+		 *
+		 * @return the channel names
+		 */
+		public Set<String> getExistingChannels() {
+			return this.existingChannels;
 		}
 
-		int intValue;
-		if (value instanceof Double) {
-			intValue = ((Double) value).intValue();
-		} else if (value instanceof Integer) {
-			intValue = (Integer) value;
-		} else {
-			throw new IllegalArgumentException("Unable to cast value " + value);
+		@Override
+		public FieldBuffer createBuffer() {
+			return new FieldBuffer(this.outputChannels);
 		}
 
-		if (sum == null) {
-			return intValue;
-		} else {
-			return sum + intValue;
+		@Override
+		public void apply(ChunkData.Row input, FieldBuffer output) {
+			output.clear();
+			for (Step step : this.steps) {
+				step.apply(input, output);
+			}
 		}
 	}
 
-	private static Integer multiply(Integer factor, Object value) {
-		if (value == null) {
-			return 0;
+	/**
+	 * Collects the Steps, input columns and output slots while compiling a Plan.
+	 */
+	private class PlanBuilder {
+
+		private final boolean overwrite = App.OVERWRITE;
+		private final List<String> outputChannels = new ArrayList<>();
+		private final List<Step> steps = new ArrayList<>();
+		private final Set<String> inputChannels = new HashSet<>();
+		private final Set<String> existingChannels = new HashSet<>();
+
+		private void add(Step step) {
+			this.steps.add(step);
 		}
 
-		int intValue;
-		if (value instanceof Double) {
-			intValue = ((Double) value).intValue();
-		} else if (value instanceof Integer) {
-			intValue = (Integer) value;
-		} else {
-			throw new IllegalArgumentException("Unable to cast value " + value);
+		/**
+		 * Resolves an input channel to its column.
+		 *
+		 * @param channel the channel name
+		 * @return the column index
+		 */
+		private int input(String channel) {
+			assertQueried(channel);
+			this.inputChannels.add(channel);
+			return DICTIONARY.indexOf(channel);
 		}
 
-		if (factor == null) {
-			return 0;
-		} else {
-			return factor * intValue;
+		private int[] input(List<String> channels) {
+			int[] result = new int[channels.size()];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = this.input(channels.get(i));
+			}
+			return result;
+		}
+
+		/**
+		 * Resolves an output channel to its slot; used to read values that were
+		 * written by a previous Step.
+		 *
+		 * @param channel the channel name
+		 * @return the slot index
+		 */
+		private int read(String channel) {
+			assertQueried(channel);
+			return this.output(channel);
 		}
-	}
 
-	private static Integer sub(Integer sum, Object value) {
-		if (value == null) {
-			return sum;
+		private int output(String channel) {
+			int slot = this.outputChannels.indexOf(channel);
+			if (slot < 0) {
+				slot = this.outputChannels.size();
+				this.outputChannels.add(channel);
+			}
+			return slot;
 		}
 
-		int intValue;
-		if (value instanceof Double) {
-			intValue = ((Double) value).intValue();
-		} else if (value instanceof Integer) {
-			intValue = (Integer) value;
-		} else {
-			throw new IllegalArgumentException("Unable to cast value " + value);
+		/**
+		 * Resolves an output channel that a Step writes to.
+		 *
+		 * @param channel the channel name
+		 * @return the Target
+		 */
+		private Target target(String channel) {
+			if (this.overwrite) {
+				return new Target(this.output(channel), -1);
+			}
+			this.existingChannels.add(channel);
+			return new Target(this.output(channel), this.input(channel));
 		}
 
-		if (sum == null) {
-			return -intValue;
-		} else {
-			return sum - intValue;
+		private Plan build() {
+			return new Plan(this.outputChannels, this.steps, this.inputChannels, this.existingChannels);
 		}
 	}
 
-	private static Long add(Long sum, Object value) {
-		if (value == null) {
-			return sum;
+	/**
+	 * Compiles the conversion for the given Things.
+	 *
+	 * @param things the Things of the FEMS; ignored for {@link Types#DESS}
+	 * @return the Plan
+	 * @throws Exception if a Component has an unknown Factory
+	 */
+	public Plan compile(Things things) throws Exception {
+		PlanBuilder plan = new PlanBuilder();
+		switch (this.TYPE) {
+		case OPENEMS_V1:
+			this.convertEssSoc(plan, things.ess);
+			this.convertEssPower(plan, things.ess);
+			this.convertGridPower(plan, things.gridMeter);
+			this.convertProductionAcPower(plan, things.productionMeters);
+			this.convertProductionDcPower(plan, things.chargers);
+			this.convertEvcs(plan, things.evcs);
+			this.sumProductionPower(plan);
+			this.sumConsumptionPower(plan);
+			this.convertEssActiveChargeEnergy(plan, things.ess);
+			this.convertEssActiveDischargeEnergy(plan, things.ess);
+			this.convertGridBuyActiveEnergy(plan, things.gridMeter);
+			this.convertGridSellActiveEnergy(plan, things.gridMeter);
+			this.sumProductionDcActiveEnergy(plan, things.chargers);
+			this.sumProductionAcActiveEnergy(plan, things.productionMeters);
+			this.sumProductionActiveEnergy(plan);
+			this.sumConsumptionActiveEnergy(plan);
+			break;
+		case DESS:
+			this.convertDess(plan);
+			break;
 		}
+//		WARNING! setChannelValueToZero(plan, SUM_PRODUCTION_DC_ACTUAL_POWER);
+		return plan.build();
+	}
 
-		long longValue;
-		if (value instanceof Double) {
-			longValue = ((Double) value).longValue();
-		} else if (value instanceof Long) {
-			longValue = (Long) value;
-		} else {
-			throw new IllegalArgumentException("Unable to cast value " + value);
+	private static void copyValue(FieldBuffer output, ChunkData.Row input, Target target, long value) {
+		if (target.existing >= 0) {
+			// do nothing if there is already a value
+			if (!input.isNull(target.existing)) {
+				return;
+			}
 		}
 
-		if (sum == null) {
-			return longValue;
-		} else {
-			return sum + longValue;
+		// copy value
+		output.set(target.slot, value);
+	}
+
+	/**
+	 * Sums up the values of the columns and copies the sum to the target. Does
+	 * nothing if no value is set.
+	 */
+	private static void copySum(FieldBuffer output, ChunkData.Row input, Target target, int[] columns) {
+		int sum = 0;
+		boolean isSet = false;
+		for (int column : columns) {
+			if (!input.isNull(column)) {
+				sum += (int) input.get(column);
+				isSet = true;
+			}
+		}
+		if (isSet) {
+			copyValue(output, input, target, sum);
 		}
 	}
 
-	private static Integer divide(Object value, int divisor) {
-		if (value == null) {
-			return null;
+	/**
+	 * Copies the value of the column to the target.
+	 *
+	 * @return true if the value is set
+	 */
+	private static boolean copyColumn(FieldBuffer output, ChunkData.Row input, Target target, int column) {
+		if (input.isNull(column)) {
+			return false;
 		}
+		copyValue(output, input, target, (int) input.get(column));
+		return true;
+	}
+
+	private final static int[] NONE = new int[0];
 
-		int intValue;
-		if (value instanceof Double) {
-			intValue = ((Double) value).intValue();
-		} else if (value instanceof Integer) {
-			intValue = (Integer) value;
-		} else {
-			throw new IllegalArgumentException("Unable to cast value " + value);
+	/**
+	 * Adds up the values of the 'positive' output slots, subtracts the values of
+	 * the 'negative' output slots and copies the result to the target. Does
+	 * nothing if no value is set.
+	 */
+	private static void copySlotSum(FieldBuffer output, ChunkData.Row input, Target target, int[] positive,
+			int[] negative) {
+		int sum = 0;
+		boolean isSet = false;
+		for (int slot : positive) {
+			if (output.isSet(slot)) {
+				sum += (int) output.get(slot);
+				isSet = true;
+			}
+		}
+		for (int slot : negative) {
+			if (output.isSet(slot)) {
+				sum -= (int) output.get(slot);
+				isSet = true;
+			}
+		}
+		if (isSet) {
+			copyValue(output, input, target, sum);
 		}
-		return intValue / divisor;
 	}
 
-	private Object getValue(Map<String, Object> values, String channel) {
+	private void assertQueried(String channel) {
 		if (!CHANNELS.contains(channel)) {
 			throw new IllegalArgumentException("Channel was not queried: " + channel);
 		}
-		return values.get(channel);
 	}
 
 	/**
 	 * ess0/Soc + ess1/Soc + ... -> _sum/EssSoc
 	 * 
+	 * @param plan
 	 * @param ess
-	 * @param result
-	 * @param input
 	 * @throws Exception
 	 */
-	private void convertEssSoc(Map<String, Component> ess, Map<String, Object> result, Map<String, Object> input)
-			throws Exception {
-		List<Object> socs = new ArrayList<>();
+	private void convertEssSoc(PlanBuilder plan, Map<String, Component> ess) throws Exception {
+		List<String> socs = new ArrayList<>();
 		for (Entry<String, Component> entry : ess.entrySet()) {
 			String factoryPid = entry.getValue().getFactoryId();
 			switch (factoryPid) {
@@ -327,35 +465,38 @@ public class Converter {
 			case "io.openems.impl.device.pro.FeneconProEss":
 			case "Fenecon.Pro.Ess":
 			case "Fenecon.Mini.Ess":
-				socs.add(getValue(input, String.format(SOC, entry.getKey())));
+				socs.add(String.format(SOC, entry.getKey()));
 				break;
 			default:
 				throw new Exception("Unknown ESS factory: " + factoryPid);
 			}
 		}
-		OptionalDouble val = socs.stream().filter(o -> o != null).mapToInt(value -> {
-			if (value instanceof Double) {
-				return ((Double) value).intValue();
-			} else if (value instanceof Integer) {
-				return (Integer) value;
-			} else {
-				throw new IllegalArgumentException("Unable to cast value " + value);
+		int[] columns = plan.input(socs);
+		Target target = plan.target(SUM_ESS_SOC);
+		plan.add((input, output) -> {
+			long sum = 0;
+			int count = 0;
+			for (int column : columns) {
+				if (!input.isNull(column)) {
+					sum += (int) input.get(column);
+					count++;
+				}
+			}
+			if (count > 0) {
+				copyValue(output, input, target, (int) ((double) sum / count));
 			}
-		}).average();
-		copyValue(result, input, SUM_ESS_SOC, (val != null && val.isPresent()) ? (int) val.getAsDouble() : null);
+		});
 	}
 
 	/**
 	 * ess0/ActivePower + ess1/ActivePower + ... -> _sum/EssActivePower
 	 * 
+	 * @param plan
 	 * @param ess
-	 * @param result
-	 * @param input
 	 * @throws Exception
 	 */
-	private void convertEssPower(Map<String, Component> ess, Map<String, Object> result, Map<String, Object> input)
-			throws Exception {
-		Integer sum = null;
+	private void convertEssPower(PlanBuilder plan, Map<String, Component> ess) throws Exception {
+		List<String> channels = new ArrayList<>();
 		for (Entry<String, Component> entry : ess.entrySet()) {
 			String factoryPid = entry.getValue().getFactoryId();
 			switch (factoryPid) {
@@ -369,14 +510,14 @@ public class Converter {
 			case "io.openems.impl.device.pro.FeneconProEss":
 			case "Fenecon.Pro.Ess":
 			case "Fenecon.Mini.Ess":
-				sum = add(sum, getValue(input, String.format(ACTIVE_POWER_L1, entry.getKey())));
-				sum = add(sum, getValue(input, String.format(ACTIVE_POWER_L2, entry.getKey())));
-				sum = add(sum, getValue(input, String.format(ACTIVE_POWER_L3, entry.getKey())));
+				channels.add(String.format(ACTIVE_POWER_L1, entry.getKey()));
+				channels.add(String.format(ACTIVE_POWER_L2, entry.getKey()));
+				channels.add(String.format(ACTIVE_POWER_L3, entry.getKey()));
 				break;
 
 			// SYMMETRIC
 			case "io.openems.impl.device.commercial.FeneconCommercialEss":
-				sum = add(sum, getValue(input, String.format(ACTIVE_POWER, entry.getKey())));
+				channels.add(String.format(ACTIVE_POWER, entry.getKey()));
 				break;
 
 			default:
@@ -384,35 +525,34 @@ public class Converter {
 			}
 		}
 
-		copyValue(result, input, SUM_ESS_ACTIVE_POWER, sum);
+		int[] columns = plan.input(channels);
+		Target target = plan.target(SUM_ESS_ACTIVE_POWER);
+		plan.add((input, output) -> copySum(output, input, target, columns));
 	}
 
 	/**
 	 * meter0/ActivePower -> _sum/GridActivePower
 	 * 
+	 * @param plan
 	 * @param gridMeter
-	 * 
-	 * @param result
-	 * @param input
 	 * @throws Exception
 	 */
-	private void convertGridPower(Entry<String, Component> gridMeter, Map<String, Object> result,
-			Map<String, Object> input) throws Exception {
-		Integer sum = getMeterPower(gridMeter, result, input);
-		copyValue(result, input, SUM_GRID_ACTIVE_POWER, sum);
+	private void convertGridPower(PlanBuilder plan, Entry<String, Component> gridMeter) throws Exception {
+		int[] columns = plan.input(getMeterPowerChannels(gridMeter));
+		Target target = plan.target(SUM_GRID_ACTIVE_POWER);
+		plan.add((input, output) -> copySum(output, input, target, columns));
 	}
 
-	private Integer getMeterPower(Entry<String, Component> meter, Map<String, Object> result, Map<String, Object> input)
-			throws Exception {
-		Integer sum = null;
+	private List<String> getMeterPowerChannels(Entry<String, Component> meter) throws Exception {
+		List<String> result = new ArrayList<>();
 		String clazz = meter.getValue().getFactoryId();
 		switch (clazz) {
 		// ASYMMETRIC
 		case "io.openems.impl.device.pro.FeneconProPvMeter":
 		case "Fenecon.Pro.PvMeter":
-			sum = add(sum, getValue(input, String.format(ACTIVE_POWER_L1, meter.getKey())));
-			sum = add(sum, getValue(input, String.format(ACTIVE_POWER_L2, meter.getKey())));
-			sum = add(sum, getValue(input, String.format(ACTIVE_POWER_L3, meter.getKey())));
+			result.add(String.format(ACTIVE_POWER_L1, meter.getKey()));
+			result.add(String.format(ACTIVE_POWER_L2, meter.getKey()));
+			result.add(String.format(ACTIVE_POWER_L3, meter.getKey()));
 			break;
 
 		// SYMMETRIC
@@ -424,61 +564,64 @@ public class Converter {
 		case "Meter.SOCOMEC.DirisA14":
 		case "Meter.SOCOMEC.CountisE24":
 		case "Meter.CarloGavazzi.EM300":
-			sum = add(sum, getValue(input, String.format(ACTIVE_POWER, meter.getKey())));
+			result.add(String.format(ACTIVE_POWER, meter.getKey()));
 			break;
 
 		default:
 			throw new Exception("Unknown Meter class: " + clazz);
 		}
 
-		return sum;
+		return result;
 	}
 
 	/**
 	 * charger0/ActualPower -> _sum/ProductionDcActualPower
 	 * 
+	 * @param plan
 	 * @param chargers
-	 * @param result
-	 * @param input
 	 * @throws Exception
 	 */
-	private void convertProductionDcPower(Map<String, Component> chargers, Map<String, Object> result,
-			Map<String, Object> input) throws Exception {
-		Integer sum = null;
+	private void convertProductionDcPower(PlanBuilder plan, Map<String, Component> chargers) throws Exception {
+		List<String> channels = new ArrayList<>();
 		for (Entry<String, Component> entry : chargers.entrySet()) {
 			String factoryPid = entry.getValue().getFactoryId();
 			switch (factoryPid) {
 			case "TODO":
-				sum = add(sum, getValue(input, String.format(ACTUAL_POWER, entry.getKey())));
+				channels.add(String.format(ACTUAL_POWER, entry.getKey()));
 				break;
 
 			default:
 				throw new Exception("Unknown Charger factory: " + factoryPid);
 			}
 		}
-		copyValue(result, input, SUM_PRODUCTION_DC_ACTUAL_POWER, sum);
+		int[] columns = plan.input(channels);
+		Target target = plan.target(SUM_PRODUCTION_DC_ACTUAL_POWER);
+		plan.add((input, output) -> copySum(output, input, target, columns));
 	}
 
 	/**
 	 * evcs0/ActualPower -> evcs0/ChargePower
 	 * 
+	 * @param plan
 	 * @param evcss
-	 * @param result
-	 * @param input
 	 * @throws Exception
 	 */
-	private void convertEvcs(Map<String, Component> evcss, Map<String, Object> result, Map<String, Object> input)
-			throws Exception {
+	private void convertEvcs(PlanBuilder plan, Map<String, Component> evcss) throws Exception {
 		for (Entry<String, Component> entry : evcss.entrySet()) {
 			String factoryPid = entry.getValue().getFactoryId();
 			switch (factoryPid) {
-			case "Evcs.Keba.KeContact":
-				copyValue(result, input, //
-						// Output:
-						String.format(CHARGE_POWER, entry.getKey()), //
-						// Input:
-						divide(getValue(input, String.format(ACTUAL_POWER, entry.getKey())), 1000));
+			case "Evcs.Keba.KeContact": {
+				// Input:
+				int column = plan.input(String.format(ACTUAL_POWER, entry.getKey()));
+				// Output:
+				Target target = plan.target(String.format(CHARGE_POWER, entry.getKey()));
+				plan.add((input, output) -> {
+					if (!input.isNull(column)) {
+						copyValue(output, input, target, (int) input.get(column) / 1000);
+					}
+				});
 				break;
+			}
 
 			default:
 				throw new Exception("Unknown EVCS factory: " + factoryPid);
@@ -489,213 +632,248 @@ public class Converter {
 	/**
 	 * meter1/ActivePower -> _sum/ProductionAcActivePower
 	 * 
+	 * @param plan
 	 * @param productionMeters
-	 * @param result
-	 * @param input
 	 * @throws Exception
 	 */
-	private void convertProductionAcPower(Map<String, Component> productionMeters, Map<String, Object> result,
-			Map<String, Object> input) throws Exception {
-		Integer sum = null;
+	private void convertProductionAcPower(PlanBuilder plan, Map<String, Component> productionMeters)
+			throws Exception {
+		List<int[]> meters = new ArrayList<>();
 		for (Entry<String, Component> entry : productionMeters.entrySet()) {
-			sum = add(sum, getMeterPower(entry, result, input));
+			meters.add(plan.input(getMeterPowerChannels(entry)));
 		}
-		copyValue(result, input, SUM_PRODUCTION_AC_ACTIVE_POWER, sum);
+		Target target = plan.target(SUM_PRODUCTION_AC_ACTIVE_POWER);
+		int[] columns = meters.stream().flatMapToInt(Arrays::stream).toArray();
+		plan.add((input, output) -> copySum(output, input, target, columns));
 	}
 
 	/**
 	 * _sum/ProductionDcActualPower + _sum/ProductionAcActivePower ->
 	 * _sum/ProductionActivePower
 	 * 
-	 * @param result
-	 * @param input
-	 * @param input
+	 * @param plan
 	 */
-	private void sumProductionPower(Map<String, Object> result, Map<String, Object> input) {
-		Integer sum = null;
-		sum = add(sum, getValue(result, SUM_PRODUCTION_AC_ACTIVE_POWER));
-		sum = add(sum, getValue(result, SUM_PRODUCTION_DC_ACTUAL_POWER));
-		copyValue(result, input, SUM_PRODUCTION_ACTIVE_POWER, sum);
+	private void sumProductionPower(PlanBuilder plan) {
+		int ac = plan.read(SUM_PRODUCTION_AC_ACTIVE_POWER);
+		int dc = plan.read(SUM_PRODUCTION_DC_ACTUAL_POWER);
+		Target target = plan.target(SUM_PRODUCTION_ACTIVE_POWER);
+		int[] slots = new int[] { ac, dc };
+		plan.add((input, output) -> copySlotSum(output, input, target, slots, NONE));
 	}
 
 	/**
 	 * _sum/EssActivePower + _sum/GridActivePower + _sum/ProductionAcActivePower ->
 	 * _sum/ConsumptionActivePower
 	 * 
-	 * @param result
-	 * @param input
-	 * @param input
+	 * @param plan
 	 */
-	private void sumConsumptionPower(Map<String, Object> result, Map<String, Object> input) {
-		Integer sum = null;
-		sum = add(sum, getValue(result, SUM_ESS_ACTIVE_POWER));
-		sum = add(sum, getValue(result, SUM_GRID_ACTIVE_POWER));
-		sum = add(sum, getValue(result, SUM_PRODUCTION_AC_ACTIVE_POWER));
-		copyValue(result, input, SUM_CONSUMPTION_ACTIVE_POWER, sum);
+	private void sumConsumptionPower(PlanBuilder plan) {
+		int ess = plan.read(SUM_ESS_ACTIVE_POWER);
+		int grid = plan.read(SUM_GRID_ACTIVE_POWER);
+		int productionAc = plan.read(SUM_PRODUCTION_AC_ACTIVE_POWER);
+		Target target = plan.target(SUM_CONSUMPTION_ACTIVE_POWER);
+		int[] slots = new int[] { ess, grid, productionAc };
+		plan.add((input, output) -> copySlotSum(output, input, target, slots, NONE));
 	}
 
 	/**
 	 * Sets the given Channel value to zero.
 	 * 
-	 * @param result
+	 * @param plan
 	 * @param targetChannel
 	 */
 	@SuppressWarnings("unused")
-	private void setChannelValueToZero(Map<String, Object> result, String targetChannel) {
+	private void setChannelValueToZero(PlanBuilder plan, String targetChannel) {
 		System.out.println("Warning: Setting " + targetChannel + " to zero!");
-		result.put(targetChannel, 0);
+		int slot = plan.output(targetChannel);
+		plan.add((input, output) -> output.set(slot, 0));
 	}
 
 	/**
 	 * DESS -> ess0, meter0, _sum/...
 	 * 
-	 * @param gridMeter
-	 * @param result
-	 * @param input
+	 * @param plan
 	 * @throws Exception
 	 */
-	private void convertDess(Map<String, Object> result, Map<String, Object> input) throws Exception {
+	private void convertDess(PlanBuilder plan) throws Exception {
 		// Grid
-		Integer gridPower = null;
-		{
-			Integer meter0ActivePowerL1 = null;
-			meter0ActivePowerL1 = add(meter0ActivePowerL1, getValue(input, DESS_METER0_ACTIVE_POWER_L1));
-			copyValue(result, input, String.format(ACTIVE_POWER_L1, "meter0"), meter0ActivePowerL1);
-			if (meter0ActivePowerL1 != null) {
-				meter0ActivePowerL1 *= -1;
-			}
+		int dessMeter0ActivePowerL1 = plan.input(DESS_METER0_ACTIVE_POWER_L1);
+		int dessMeter0ActivePowerL2 = plan.input(DESS_METER0_ACTIVE_POWER_L2);
+		int dessMeter0ActivePowerL3 = plan.input(DESS_METER1_ACTIVE_POWER_L3);
+		int dessMeter0ActiveProductionEnergy = plan.input(DESS_METER0_ACTIVE_PRODUCTION_ENERGY);
+		int dessMeter0ActiveConsumptionEnergy = plan.input(DESS_METER0_ACTIVE_CONSUMPTION_ENERGY);
+		Target meter0ActivePowerL1Target = plan.target(String.format(ACTIVE_POWER_L1, "meter0"));
+		Target meter0ActivePowerL2Target = plan.target(String.format(ACTIVE_POWER_L2, "meter0"));
+		Target meter0ActivePowerL3Target = plan.target(String.format(ACTIVE_POWER_L3, "meter0"));
+		Target meter0ActivePowerTarget = plan.target(String.format(ACTIVE_POWER, "meter0"));
+		Target sumGridActivePowerTarget = plan.target(SUM_GRID_ACTIVE_POWER);
+		Target meter0ActiveProductionEnergyTarget = plan.target(String.format(ACTIVE_PRODUCTION_ENERGY, "meter0"));
+		Target meter0ActiveConsumptionEnergyTarget = plan.target(String.format(ACTIVE_CONSUMPTION_ENERGY, "meter0"));
 
-			Integer meter0ActivePowerL2 = null;
-			meter0ActivePowerL2 = add(meter0ActivePowerL2, getValue(input, DESS_METER0_ACTIVE_POWER_L2));
-			copyValue(result, input, String.format(ACTIVE_POWER_L2, "meter0"), meter0ActivePowerL2);
-			if (meter0ActivePowerL2 != null) {
-				meter0ActivePowerL2 *= -1;
-			}
+		// SoC
+		int dessSoc = plan.input(DESS_SOC);
+		Target sumEssSocTarget = plan.target(SUM_ESS_SOC);
 
-			Integer meter0ActivePowerL3 = null;
-			meter0ActivePowerL3 = add(meter0ActivePowerL3, getValue(input, DESS_METER1_ACTIVE_POWER_L3));
-			copyValue(result, input, String.format(ACTIVE_POWER_L3, "meter0"), meter0ActivePowerL3);
-			if (meter0ActivePowerL3 != null) {
-				meter0ActivePowerL3 *= -1;
-			}
+		// Production DC
+		int dessCharger0ActualPower = plan.input(DESS_CHARGER0_ACTUAL_POWER);
+		int dessCharger1ActualPower = plan.input(DESS_CHARGER1_ACTUAL_POWER);
+		int dessCharger0ActualEnergy = plan.input(DESS_CHARGER0_ACTUAL_ENERGY);
+		int dessCharger1ActualEnergy = plan.input(DESS_CHARGER1_ACTUAL_ENERGY);
+		Target charger0ActualPowerTarget = plan.target(String.format(ACTUAL_POWER, "charger0"));
+		Target charger1ActualPowerTarget = plan.target(String.format(ACTUAL_POWER, "charger1"));
+		Target sumProductionDcActualPowerTarget = plan.target(SUM_PRODUCTION_DC_ACTUAL_POWER);
+		Target charger0ActualEnergyTarget = plan.target(String.format(ACTUAL_ENERGY, "charger0"));
+		Target charger1ActualEnergyTarget = plan.target(String.format(ACTUAL_ENERGY, "charger1"));
 
-			gridPower = add(gridPower, meter0ActivePowerL1);
-			gridPower = add(gridPower, meter0ActivePowerL2);
-			gridPower = add(gridPower, meter0ActivePowerL3);
-			copyValue(result, input, String.format(ACTIVE_POWER, "meter0"), gridPower);
-			copyValue(result, input, SUM_GRID_ACTIVE_POWER, gridPower);
-
-			Integer meter0ActiveProductionEnergy = null;
-			meter0ActiveProductionEnergy = add(meter0ActiveProductionEnergy,
-					getValue(input, DESS_METER0_ACTIVE_PRODUCTION_ENERGY));
-			if (meter0ActiveProductionEnergy != null) {
-				meter0ActiveProductionEnergy *= 100;
-			}
-			copyValue(result, input, String.format(ACTIVE_PRODUCTION_ENERGY, "meter0"), meter0ActiveProductionEnergy);
+		// Production AC
+		int dessMeter1ActivePowerL1 = plan.input(DESS_METER1_ACTIVE_POWER_L1);
+		int dessMeter1ActivePowerL2 = plan.input(DESS_METER1_ACTIVE_POWER_L2);
+		int dessMeter1ActivePowerL3 = plan.input(DESS_METER1_ACTIVE_POWER_L3);
+		Target meter1ActivePowerL1Target = plan.target(String.format(ACTIVE_POWER_L1, "meter1"));
+		Target meter1ActivePowerL2Target = plan.target(String.format(ACTIVE_POWER_L2, "meter1"));
+		Target meter1ActivePowerL3Target = plan.target(String.format(ACTIVE_POWER_L3, "meter1"));
+		Target meter1ActivePowerTarget = plan.target(String.format(ACTIVE_POWER, "meter1"));
+		Target sumProductionAcActivePowerTarget = plan.target(SUM_PRODUCTION_AC_ACTIVE_POWER);
 
-			Integer meter0ActiveConsumptionEnergy = null;
-			meter0ActiveConsumptionEnergy = add(meter0ActiveConsumptionEnergy,
-					getValue(input, DESS_METER0_ACTIVE_CONSUMPTION_ENERGY));
-			if (meter0ActiveConsumptionEnergy != null) {
-				meter0ActiveConsumptionEnergy *= 100;
-			}
-			copyValue(result, input, String.format(ACTIVE_CONSUMPTION_ENERGY, "meter0"), meter0ActiveConsumptionEnergy);
-		}
+		// Production Total
+		Target sumProductionActivePowerTarget = plan.target(SUM_PRODUCTION_ACTIVE_POWER);
 
-		// SoC
-		Integer soc = null;
-		soc = add(soc, getValue(input, DESS_SOC));
-		copyValue(result, input, SUM_ESS_SOC, soc);
+		// Consumption
+		int[] dessConsumption = plan.input(Arrays.asList(DESS_CONSUMPTION_L1, DESS_CONSUMPTION_L2, DESS_CONSUMPTION_L3));
+		Target sumConsumptionActivePowerTarget = plan.target(SUM_CONSUMPTION_ACTIVE_POWER);
 
-		// Production DC
-		Integer productionDcPower = null;
-		{
-			Integer charger0ActualPower = null;
-			charger0ActualPower = add(charger0ActualPower, getValue(input, DESS_CHARGER0_ACTUAL_POWER));
-			copyValue(result, input, String.format(ACTUAL_POWER, "charger0"), charger0ActualPower);
-
-			Integer charger1ActualPower = null;
-			charger1ActualPower = add(charger1ActualPower, getValue(input, DESS_CHARGER1_ACTUAL_POWER));
-			copyValue(result, input, String.format(ACTUAL_POWER, "charger1"), charger1ActualPower);
-
-			productionDcPower = add(productionDcPower, charger0ActualPower);
-			productionDcPower = add(productionDcPower, charger1ActualPower);
-			copyValue(result, input, SUM_PRODUCTION_DC_ACTUAL_POWER, productionDcPower);
-
-			Long charger0ActualEnergy = null;
-			charger0ActualEnergy = add(charger0ActualEnergy, getValue(input, DESS_CHARGER0_ACTUAL_ENERGY));
-			if (charger0ActualEnergy != null) {
-				charger0ActualEnergy = (charger0ActualEnergy + (long) Math.pow(2, 32)) * 100;
+		// Charge/Discharge
+		Target ess0ActivePowerTarget = plan.target(String.format(ACTIVE_POWER, "ess0"));
+		Target sumEssActivePowerTarget = plan.target(SUM_ESS_ACTIVE_POWER);
+
+		plan.add((input, output) -> {
+			// Grid
+			int gridPower = 0;
+			boolean isGridPower = false;
+			{
+				if (copyColumn(output, input, meter0ActivePowerL1Target, dessMeter0ActivePowerL1)) {
+					gridPower -= (int) input.get(dessMeter0ActivePowerL1);
+					isGridPower = true;
+				}
+				if (copyColumn(output, input, meter0ActivePowerL2Target, dessMeter0ActivePowerL2)) {
+					gridPower -= (int) input.get(dessMeter0ActivePowerL2);
+					isGridPower = true;
+				}
+				if (copyColumn(output, input, meter0ActivePowerL3Target, dessMeter0ActivePowerL3)) {
+					gridPower -= (int) input.get(dessMeter0ActivePowerL3);
+					isGridPower = true;
+				}
+				if (isGridPower) {
+					copyValue(output, input, meter0ActivePowerTarget, gridPower);
+					copyValue(output, input, sumGridActivePowerTarget, gridPower);
+				}
+
+				if (!input.isNull(dessMeter0ActiveProductionEnergy)) {
+					copyValue(output, input, meter0ActiveProductionEnergyTarget,
+							(int) input.get(dessMeter0ActiveProductionEnergy) * 100);
+				}
+				if (!input.isNull(dessMeter0ActiveConsumptionEnergy)) {
+					copyValue(output, input, meter0ActiveConsumptionEnergyTarget,
+							(int) input.get(dessMeter0ActiveConsumptionEnergy) * 100);
+				}
 			}
-			copyValue(result, input, String.format(ACTUAL_ENERGY, "charger0"), charger0ActualEnergy);
 
-			Long charger1ActualEnergy = null;
-			charger1ActualEnergy = add(charger1ActualEnergy, getValue(input, DESS_CHARGER1_ACTUAL_ENERGY));
-			if (charger1ActualEnergy != null) {
-				charger1ActualEnergy = (charger1ActualEnergy + (long) Math.pow(2, 32)) * 100;
+			// SoC
+			copyColumn(output, input, sumEssSocTarget, dessSoc);
+
+			// Production DC
+			int productionDcPower = 0;
+			boolean isProductionDcPower = false;
+			{
+				if (copyColumn(output, input, charger0ActualPowerTarget, dessCharger0ActualPower)) {
+					productionDcPower += (int) input.get(dessCharger0ActualPower);
+					isProductionDcPower = true;
+				}
+				if (copyColumn(output, input, charger1ActualPowerTarget, dessCharger1ActualPower)) {
+					productionDcPower += (int) input.get(dessCharger1ActualPower);
+					isProductionDcPower = true;
+				}
+				if (isProductionDcPower) {
+					copyValue(output, input, sumProductionDcActualPowerTarget, productionDcPower);
+				}
+
+				if (!input.isNull(dessCharger0ActualEnergy)) {
+					copyValue(output, input, charger0ActualEnergyTarget,
+							((long) input.get(dessCharger0ActualEnergy) + (1L << 32)) * 100);
+				}
+				if (!input.isNull(dessCharger1ActualEnergy)) {
+					copyValue(output, input, charger1ActualEnergyTarget,
+							((long) input.get(dessCharger1ActualEnergy) + (1L << 32)) * 100);
+				}
 			}
-			copyValue(result, input, String.format(ACTUAL_ENERGY, "charger1"), charger1ActualEnergy);
-		}
 
-		// Production AC
-		Integer productionAcPower = null;
-		{
-			Integer meter1ActivePowerL1 = null;
-			meter1ActivePowerL1 = add(meter1ActivePowerL1, getValue(input, DESS_METER1_ACTIVE_POWER_L1));
-			copyValue(result, input, String.format(ACTIVE_POWER_L1, "meter1"), meter1ActivePowerL1);
-
-			Integer meter1ActivePowerL2 = null;
-			meter1ActivePowerL2 = add(meter1ActivePowerL2, getValue(input, DESS_METER1_ACTIVE_POWER_L2));
-			copyValue(result, input, String.format(ACTIVE_POWER_L2, "meter1"), meter1ActivePowerL2);
-
-			Integer meter1ActivePowerL3 = null;
-			meter1ActivePowerL3 = add(meter1ActivePowerL3, getValue(input, DESS_METER1_ACTIVE_POWER_L3));
-			copyValue(result, input, String.format(ACTIVE_POWER_L3, "meter1"), meter1ActivePowerL3);
-
-			productionAcPower = add(productionAcPower, meter1ActivePowerL1);
-			productionAcPower = add(productionAcPower, meter1ActivePowerL2);
-			productionAcPower = add(productionAcPower, meter1ActivePowerL3);
-			copyValue(result, input, String.format(ACTIVE_POWER, "meter1"), gridPower);
-			copyValue(result, input, SUM_PRODUCTION_AC_ACTIVE_POWER, productionAcPower);
-		}
+			// Production AC
+			int productionAcPower = 0;
+			boolean isProductionAcPower = false;
+			{
+				if (copyColumn(output, input, meter1ActivePowerL1Target, dessMeter1ActivePowerL1)) {
+					productionAcPower += (int) input.get(dessMeter1ActivePowerL1);
+					isProductionAcPower = true;
+				}
+				if (copyColumn(output, input, meter1ActivePowerL2Target, dessMeter1ActivePowerL2)) {
+					productionAcPower += (int) input.get(dessMeter1ActivePowerL2);
+					isProductionAcPower = true;
+				}
+				if (copyColumn(output, input, meter1ActivePowerL3Target, dessMeter1ActivePowerL3)) {
+					productionAcPower += (int) input.get(dessMeter1ActivePowerL3);
+					isProductionAcPower = true;
+				}
+				if (isGridPower) {
+					copyValue(output, input, meter1ActivePowerTarget, gridPower);
+				}
+				if (isProductionAcPower) {
+					copyValue(output, input, sumProductionAcActivePowerTarget, productionAcPower);
+				}
+			}
 
-		// Production Total
-		Integer productionPower = null;
-		productionPower = add(productionPower, productionDcPower);
-		productionPower = add(productionPower, productionAcPower);
-		copyValue(result, input, SUM_PRODUCTION_ACTIVE_POWER, productionPower);
+			// Production Total
+			int productionPower = productionDcPower + productionAcPower;
+			boolean isProductionPower = isProductionDcPower || isProductionAcPower;
+			if (isProductionPower) {
+				copyValue(output, input, sumProductionActivePowerTarget, productionPower);
+			}
 
-		// Consumption
-		Integer consumptionPower = null;
-		{
-			consumptionPower = add(consumptionPower, getValue(input, DESS_CONSUMPTION_L1));
-			consumptionPower = add(consumptionPower, getValue(input, DESS_CONSUMPTION_L2));
-			consumptionPower = add(consumptionPower, getValue(input, DESS_CONSUMPTION_L3));
-			copyValue(result, input, SUM_CONSUMPTION_ACTIVE_POWER, consumptionPower);
-		}
+			// Consumption
+			int consumptionPower = 0;
+			boolean isConsumptionPower = false;
+			{
+				for (int column : dessConsumption) {
+					if (!input.isNull(column)) {
+						consumptionPower += (int) input.get(column);
+						isConsumptionPower = true;
+					}
+				}
+				if (isConsumptionPower) {
+					copyValue(output, input, sumConsumptionActivePowerTarget, consumptionPower);
+				}
+			}
 
-		// Charge/Discharge
-		{
-			if (consumptionPower != null && gridPower != null && productionPower != null) {
-				Integer charge = consumptionPower - gridPower - productionPower;
-				copyValue(result, input, String.format(ACTIVE_POWER, "ess0"), charge);
-				copyValue(result, input, SUM_ESS_ACTIVE_POWER, charge);
+			// Charge/Discharge
+			{
+				if (isConsumptionPower && isGridPower && isProductionPower) {
+					int charge = consumptionPower - gridPower - productionPower;
+					copyValue(output, input, ess0ActivePowerTarget, charge);
+					copyValue(output, input, sumEssActivePowerTarget, charge);
+				}
 			}
-		}
+		});
 	}
 
 	/**
 	 * ess0/TotalBatteryChargeEnergy + ess1/TotalBatteryChargeEnergy ->
 	 * _sum/EssActiveChargeEnergy
 	 * 
+	 * @param plan
 	 * @param ess
-	 * @param result
-	 * @param input
 	 * @throws Exception
 	 */
-	private void convertEssActiveChargeEnergy(Map<String, Component> ess, Map<String, Object> result,
-			Map<String, Object> input) throws Exception {
-		Integer sum = null;
+	private void convertEssActiveChargeEnergy(PlanBuilder plan, Map<String, Component> ess) throws Exception {
+		List<String> channels = new ArrayList<>();
 		for (Entry<String, Component> entry : ess.entrySet()) {
 			String factoryPid = entry.getValue().getFactoryId();
 			switch (factoryPid) {
@@ -705,30 +883,30 @@ public class Converter {
 				break;
 			case "io.openems.impl.device.pro.FeneconProEss":
 			case "Fenecon.Pro.Ess":
-				sum = add(sum, getValue(input, String.format(TOTAL_BATTERY_CHARGE_ENERGY, entry.getKey())));
+				channels.add(String.format(TOTAL_BATTERY_CHARGE_ENERGY, entry.getKey()));
 				break;
 			case "Fenecon.Mini.Ess":
-				sum = add(sum, getValue(input, String.format(BATTERY_ALLOWED_CHARGING, entry.getKey())));
+				channels.add(String.format(BATTERY_ALLOWED_CHARGING, entry.getKey()));
 				break;
 			default:
 				throw new Exception("Ess-Type not implemented: " + factoryPid);
 			}
 		}
-		copyValue(result, input, SUM_ESS_ACTIVE_CHARGE_ENERGY, sum);
+		int[] columns = plan.input(channels);
+		Target target = plan.target(SUM_ESS_ACTIVE_CHARGE_ENERGY);
+		plan.add((input, output) -> copySum(output, input, target, columns));
 	}
 
 	/**
 	 * ess0/TotalBatteryDischargeEnergy + ess1/TotalBatteryDischargeEnergy ->
 	 * _sum/EssActiveDischargeEnergy
 	 * 
+	 * @param plan
 	 * @param ess
-	 * @param result
-	 * @param input
 	 * @throws Exception
 	 */
-	private void convertEssActiveDischargeEnergy(Map<String, Component> ess, Map<String, Object> result,
-			Map<String, Object> input) throws Exception {
-		Integer sum = null;
+	private void convertEssActiveDischargeEnergy(PlanBuilder plan, Map<String, Component> ess) throws Exception {
+		List<String> channels = new ArrayList<>();
 		for (Entry<String, Component> entry : ess.entrySet()) {
 			String factoryPid = entry.getValue().getFactoryId();
 			switch (factoryPid) {
@@ -738,16 +916,18 @@ public class Converter {
 				break;
 			case "io.openems.impl.device.pro.FeneconProEss":
 			case "Fenecon.Pro.Ess":
-				sum = add(sum, getValue(input, String.format(TOTAL_BATTERY_DISCHARGE_ENERGY, entry.getKey())));
+				channels.add(String.format(TOTAL_BATTERY_DISCHARGE_ENERGY, entry.getKey()));
 				break;
 			case "Fenecon.Mini.Ess":
-				sum = add(sum, getValue(input, String.format(DISCHARGED_ENERGY, entry.getKey())));
+				channels.add(String.format(DISCHARGED_ENERGY, entry.getKey()));
 				break;
 			default:
 				throw new Exception("Ess-Type not implemented: " + factoryPid);
 			}
 		}
-		copyValue(result, input, SUM_ESS_ACTIVE_DISCHARGE_ENERGY, sum);
+		int[] columns = plan.input(channels);
+		Target target = plan.target(SUM_ESS_ACTIVE_DISCHARGE_ENERGY);
+		plan.add((input, output) -> copySum(output, input, target, columns));
 	}
 
 	/**
@@ -755,89 +935,85 @@ public class Converter {
 	 * meter2/ActiveEnergyL1 + ... -> _sum/ProductionAcActiveEnergy (sources depend
 	 * on the factoryId of the given meters)
 	 * 
+	 * @param plan
 	 * @param meters (production)
-	 * @param result
-	 * @param input
 	 * @throws Exception
 	 */
-	private void sumProductionAcActiveEnergy(Map<String, Component> meters, Map<String, Object> result,
-			Map<String, Object> input) throws Exception {
-		Integer sum = null;
+	private void sumProductionAcActiveEnergy(PlanBuilder plan, Map<String, Component> meters) throws Exception {
+		Target target = plan.target(SUM_PRODUCTION_AC_ACTIVE_ENERGY);
+		Step step = null;
 		for (Entry<String, Component> entry : meters.entrySet()) {
-			sum = getMeterEnergy(entry, result, input, ValueType.POSITIVE);
+			step = this.getMeterEnergy(plan, entry, ValueType.POSITIVE, target);
+		}
+		if (step != null) {
+			plan.add(step);
 		}
-		copyValue(result, input, SUM_PRODUCTION_AC_ACTIVE_ENERGY, sum);
 	}
 
 	/**
 	 * ?? ... -> _sum/ProductionDcActiveEnergy (sources depend on the factoryId of
 	 * the given meters)
 	 * 
+	 * @param plan
 	 * @param meters (production)
-	 * @param result
-	 * @param input
 	 * @throws Exception
 	 */
-	private void sumProductionDcActiveEnergy(Map<String, Component> chargers, Map<String, Object> result,
-			Map<String, Object> input) throws Exception {
-		Integer sum = null;
+	private void sumProductionDcActiveEnergy(PlanBuilder plan, Map<String, Component> chargers) throws Exception {
+		List<String> channels = new ArrayList<>();
 		for (Entry<String, Component> entry : chargers.entrySet()) {
 			String factoryPid = entry.getValue().getFactoryId();
 			switch (factoryPid) {
 			case "TODO":
-				sum = add(sum, getValue(input, String.format(ACTUAL_ENERGY, entry.getKey())));
+				channels.add(String.format(ACTUAL_ENERGY, entry.getKey()));
 				break;
 
 			default:
 				throw new Exception("Unknown Charger factory: " + factoryPid);
 			}
 		}
-		copyValue(result, input, SUM_PRODUCTION_DC_ACTIVE_ENERGY, sum);
+		int[] columns = plan.input(channels);
+		Target target = plan.target(SUM_PRODUCTION_DC_ACTIVE_ENERGY);
+		plan.add((input, output) -> copySum(output, input, target, columns));
 	}
 
 	/**
 	 * _sum/ProductionDcActualPower + _sum/ProductionAcActivePower ->
 	 * _sum/ProductionActivePower
 	 * 
-	 * @param result
-	 * @param input
-	 * @param input
+	 * @param plan
 	 */
-	private void sumProductionActiveEnergy(Map<String, Object> result, Map<String, Object> input) {
-		Integer sum = null;
-		sum = add(sum, getValue(result, SUM_PRODUCTION_AC_ACTIVE_ENERGY));
-		sum = add(sum, getValue(result, SUM_PRODUCTION_DC_ACTIVE_ENERGY));
-		copyValue(result, input, SUM_PRODUCTION_ACTIVE_ENERGY, sum);
+	private void sumProductionActiveEnergy(PlanBuilder plan) {
+		int ac = plan.read(SUM_PRODUCTION_AC_ACTIVE_ENERGY);
+		int dc = plan.read(SUM_PRODUCTION_DC_ACTIVE_ENERGY);
+		Target target = plan.target(SUM_PRODUCTION_ACTIVE_ENERGY);
+		int[] slots = new int[] { ac, dc };
+		plan.add((input, output) -> copySlotSum(output, input, target, slots, NONE));
 	}
 
 	/**
 	 * meter0/ActivePositiveEnergy -> _sum/GridBuyActiveEnergy (sources depend on
 	 * the factoryId of the given meters)
 	 * 
-	 * @param meter  (grid)
-	 * @param result
-	 * @param input
+	 * @param plan
+	 * @param meter (grid)
 	 * @throws Exception
 	 */
-	private void convertGridBuyActiveEnergy(Entry<String, Component> meter, Map<String, Object> result,
-			Map<String, Object> input) throws Exception {
-		Integer sum = getMeterEnergy(meter, result, input, ValueType.POSITIVE);
-		copyValue(result, input, SUM_GRID_BUY_ACTIVE_ENERGY, sum);
+	private void convertGridBuyActiveEnergy(PlanBuilder plan, Entry<String, Component> meter) throws Exception {
+		Target target = plan.target(SUM_GRID_BUY_ACTIVE_ENERGY);
+		plan.add(this.getMeterEnergy(plan, meter, ValueType.POSITIVE, target));
 	}
 
 	/**
 	 * meter0/ActiveNegativeEnergy -> _sum/GridSellActiveEnergy (sources depend on
 	 * the factoryId of the given meters)
 	 * 
-	 * @param meter  (grid)
-	 * @param result
-	 * @param input
+	 * @param plan
+	 * @param meter (grid)
 	 * @throws Exception
 	 */
-	private void convertGridSellActiveEnergy(Entry<String, Component> meter, Map<String, Object> result,
-			Map<String, Object> input) throws Exception {
-		Integer sum = getMeterEnergy(meter, result, input, ValueType.NEGATIVE);
-		copyValue(result, input, SUM_GRID_SELL_ACTIVE_ENERGY, sum);
+	private void convertGridSellActiveEnergy(PlanBuilder plan, Entry<String, Component> meter) throws Exception {
+		Target target = plan.target(SUM_GRID_SELL_ACTIVE_ENERGY);
+		plan.add(this.getMeterEnergy(plan, meter, ValueType.NEGATIVE, target));
 	}
 
 	/**
@@ -845,72 +1021,88 @@ public class Converter {
 	 * _sum/GridBuyActiveEnergy - _sum/GridSellActiveEnergy +
 	 * _sum/ProductionAcActiveEnergy -> _sum/ConsumptionActiveEnergy
 	 * 
-	 * @param meter  (grid)
-	 * @param result
-	 * @param input
-	 * @throws Exception
+	 * @param plan
 	 */
-	private void sumConsumptionActiveEnergy(Map<String, Object> result, Map<String, Object> input) throws Exception {
-		Integer sum = null;
-		sum = add(sum, getValue(result, SUM_ESS_ACTIVE_DISCHARGE_ENERGY));
-		sum = sub(sum, getValue(result, SUM_ESS_ACTIVE_CHARGE_ENERGY));
-		sum = add(sum, getValue(result, SUM_GRID_BUY_ACTIVE_ENERGY));
-		sum = sub(sum, getValue(result, SUM_GRID_SELL_ACTIVE_ENERGY));
-		sum = add(sum, getValue(result, SUM_PRODUCTION_AC_ACTIVE_ENERGY));
-		copyValue(result, input, SUM_CONSUMPTION_ACTIVE_ENERGY, sum);
+	private void sumConsumptionActiveEnergy(PlanBuilder plan) {
+		int essDischarge = plan.read(SUM_ESS_ACTIVE_DISCHARGE_ENERGY);
+		int essCharge = plan.read(SUM_ESS_ACTIVE_CHARGE_ENERGY);
+		int gridBuy = plan.read(SUM_GRID_BUY_ACTIVE_ENERGY);
+		int gridSell = plan.read(SUM_GRID_SELL_ACTIVE_ENERGY);
+		int productionAc = plan.read(SUM_PRODUCTION_AC_ACTIVE_ENERGY);
+		Target target = plan.target(SUM_CONSUMPTION_ACTIVE_ENERGY);
+		int[] positive = new int[] { essDischarge, gridBuy, productionAc };
+		int[] negative = new int[] { essCharge, gridSell };
+		plan.add((input, output) -> copySlotSum(output, input, target, positive, negative));
 	}
 
 	private enum ValueType {
 		POSITIVE, NEGATIVE
 	}
 
-	private Integer getMeterEnergy(Entry<String, Component> meter, Map<String, Object> result,
-			Map<String, Object> input, ValueType type) throws Exception {
-		Integer sum = null;
+	/**
+	 * Compiles a Step that copies the energy of the meter to the target.
+	 */
+	private Step getMeterEnergy(PlanBuilder plan, Entry<String, Component> meter, ValueType type, Target target)
+			throws Exception {
 		String clazz = meter.getValue().getFactoryId();
 		switch (clazz) {
 		// ASYMMETRIC
 		case "io.openems.impl.device.pro.FeneconProPvMeter":
-		case "Fenecon.Pro.PvMeter":
-			sum = add(sum, getValue(input, String.format(ACTIVE_ENERGY_L1, meter.getKey())));
-			sum = add(sum, getValue(input, String.format(ACTIVE_ENERGY_L2, meter.getKey())));
-			sum = add(sum, getValue(input, String.format(ACTIVE_ENERGY_L3, meter.getKey())));
-			break;
+		case "Fenecon.Pro.PvMeter": {
+			int[] columns = plan.input(Arrays.asList( //
+					String.format(ACTIVE_ENERGY_L1, meter.getKey()), //
+					String.format(ACTIVE_ENERGY_L2, meter.getKey()), //
+					String.format(ACTIVE_ENERGY_L3, meter.getKey())));
+			return (input, output) -> copySum(output, input, target, columns);
+		}
 		case "io.openems.impl.device.socomec.SocomecMeter":
 		case "Meter.SOCOMEC.DirisA14":
-		case "Meter.CarloGavazzi.EM300":
+		case "Meter.CarloGavazzi.EM300": {
+			int column;
 			switch (type) {
 			case POSITIVE:
-				sum = add(sum, multiply(1000, getValue(input, String.format(ACTIVE_POSITIVE_ENERGY, meter.getKey()))));
+				column = plan.input(String.format(ACTIVE_POSITIVE_ENERGY, meter.getKey()));
 				break;
 			case NEGATIVE:
-				sum = add(sum, multiply(1000, getValue(input, String.format(ACTIVE_NEGATIVE_ENERGY, meter.getKey()))));
+				column = plan.input(String.format(ACTIVE_NEGATIVE_ENERGY, meter.getKey()));
 				break;
 			default:
 				throw new Exception("Unexpected ValueType (" + type + ") for Meter class " + clazz);
 			}
-			break;
-		case "Fenecon.Mini.PvMeter":
+			// a missing value counts as zero
+			return (input, output) -> copyValue(output, input, target,
+					input.isNull(column) ? 0 : 1000 * (int) input.get(column));
+		}
+		case "Fenecon.Mini.PvMeter": {
 			// TODO: Fix MSWLSW -> LSWMSW
-			sum = add(sum, getValue(input, String.format(ENERGY, meter.getKey())));
-			break;
-		case "Fenecon.Mini.GridMeter":
+			int column = plan.input(String.format(ENERGY, meter.getKey()));
+			return (input, output) -> {
+				if (!input.isNull(column)) {
+					copyValue(output, input, target, (int) input.get(column));
+				}
+			};
+		}
+		case "Fenecon.Mini.GridMeter": {
+			int column;
 			switch (type) {
 			case POSITIVE:
-				sum = add(sum, getValue(input, String.format(BUY_FROM_GRID_ENERGY, meter.getKey())));
+				column = plan.input(String.format(BUY_FROM_GRID_ENERGY, meter.getKey()));
 				break;
 			case NEGATIVE:
-				sum = add(sum, getValue(input, String.format(SELL_TO_GRID_ENERGY, meter.getKey())));
+				column = plan.input(String.format(SELL_TO_GRID_ENERGY, meter.getKey()));
 				break;
 			default:
 				throw new Exception("Unexpected ValueType (" + type + ") for Meter class " + clazz);
 			}
-			break;
+			return (input, output) -> {
+				if (!input.isNull(column)) {
+					copyValue(output, input, target, (int) input.get(column));
+				}
+			};
+		}
 		default:
 			throw new Exception("Unknown Meter class: " + clazz);
 		}
-
-		return sum;
 	}
 
 }
@@ -0,0 +1,187 @@
+package dbconverter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import dbconverter.Utils.TimeChunk;
+
+/**
+ * Records on disk which time ranges of one FEMS were converted, and by which
+ * {@link Converter#VERSION}.
+ *
+ * <p>
+ * The ranges are kept as a sorted set of non-overlapping intervals with second
+ * granularity; adjacent intervals of the same version are merged, so the index
+ * stays small however many chunks were written. Ranges that were converted by
+ * another version count as holes. With '-SKIP_COVERED=true' the
+ * {@link ChunkPlanner} plans only the holes, e.g. chunks that were ignored in
+ * previous runs.
+ */
+public class Coverage implements ChunkPipeline.Listener {
+
+	/**
+	 * Directory of the coverage files.
+	 */
+	public static String DIRECTORY = "coverage";
+
+	private static class Interval {
+		private final long from;
+		private long to;
+		private final int version;
+
+		private Interval(long from, long to, int version) {
+			this.from = from;
+			this.to = to;
+			this.version = version;
+		}
+	}
+
+	private final int femsId;
+	private final String configuration;
+	private final Path path;
+	private final List<Interval> intervals = new ArrayList<>();
+
+	private Coverage(int femsId, String configuration) {
+		this.femsId = femsId;
+		this.configuration = configuration;
+		this.path = Paths.get(DIRECTORY,
+				femsId + "-" + String.format("%08x", configuration.hashCode()) + ".json");
+	}
+
+	/**
+	 * Loads the Coverage of the FEMS and run configuration.
+	 *
+	 * @param femsId        the FEMS-ID
+	 * @param configuration describes source and target of the conversion
+	 * @return the Coverage; empty if none was saved yet
+	 * @throws Exception on error
+	 */
+	public static Coverage load(int femsId, String configuration) throws Exception {
+		Coverage result = new Coverage(femsId, configuration);
+		if (!Files.exists(result.path)) {
+			return result;
+		}
+		JsonObject json = JsonUtils
+				.parseToJsonObject(new String(Files.readAllBytes(result.path), StandardCharsets.UTF_8));
+		if (JsonUtils.getAsInt(json, "femsId") != femsId
+				|| !JsonUtils.getAsString(json, "configuration").equals(configuration)) {
+			// hash collision
+			return new Coverage(femsId, configuration);
+		}
+		for (JsonElement element : JsonUtils.getAsJsonArray(json, "intervals")) {
+			result.intervals.add(new Interval(JsonUtils.getAsLong(element, "from"),
+					JsonUtils.getAsLong(element, "to"), JsonUtils.getAsInt(element, "version")));
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the end of the range that is covered by the current version and
+	 * contains the date.
+	 *
+	 * @param date the date
+	 * @return the end of the range; null if the date is not covered
+	 */
+	public synchronized ZonedDateTime getCoveredUntil(ZonedDateTime date) {
+		long second = date.toEpochSecond();
+		for (Interval interval : this.intervals) {
+			if (interval.version == Converter.VERSION && interval.from <= second && second < interval.to) {
+				return toDate(interval.to, date);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the start of the next range after the date that is covered by the
+	 * current version.
+	 *
+	 * @param date the date
+	 * @return the start of the range; null if there is none
+	 */
+	public synchronized ZonedDateTime getNextCovered(ZonedDateTime date) {
+		long second = date.toEpochSecond();
+		for (Interval interval : this.intervals) {
+			if (interval.version == Converter.VERSION && interval.from > second) {
+				return toDate(interval.from, date);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Marks the chunk as converted by the current version and saves the
+	 * Coverage.
+	 *
+	 * @param chunk the written time chunk
+	 */
+	@Override
+	public synchronized void finished(TimeChunk chunk) {
+		this.add(chunk.fromDate.toEpochSecond(), chunk.toDate.toEpochSecond(), Converter.VERSION);
+		this.save();
+	}
+
+	private void add(long from, long to, int version) {
+		if (from >= to) {
+			return;
+		}
+		List<Interval> result = new ArrayList<>();
+		for (Interval interval : this.intervals) {
+			// keep the parts outside of the new interval
+			if (interval.from < from) {
+				result.add(new Interval(interval.from, Math.min(interval.to, from), interval.version));
+			}
+			if (interval.to > to) {
+				result.add(new Interval(Math.max(interval.from, to), interval.to, interval.version));
+			}
+		}
+		result.add(new Interval(from, to, version));
+		result.sort((i1, i2) -> Long.compare(i1.from, i2.from));
+
+		this.intervals.clear();
+		for (Interval interval : result) {
+			Interval last = this.intervals.isEmpty() ? null : this.intervals.get(this.intervals.size() - 1);
+			if (last != null && last.version == interval.version && last.to >= interval.from) {
+				last.to = Math.max(last.to, interval.to);
+			} else {
+				this.intervals.add(interval);
+			}
+		}
+	}
+
+	private void save() {
+		JsonArray intervals = new JsonArray();
+		for (Interval interval : this.intervals) {
+			intervals.add(JsonUtils.buildJsonObject() //
+					.addProperty("from", interval.from) //
+					.addProperty("to", interval.to) //
+					.addProperty("version", interval.version) //
+					.build());
+		}
+		JsonObject json = JsonUtils.buildJsonObject() //
+				.addProperty("femsId", this.femsId) //
+				.addProperty("configuration", this.configuration) //
+				.add("intervals", intervals) //
+				.build();
+		try {
+			Utils.writeAtomically(this.path, json.toString());
+		} catch (IOException e) {
+			System.out.println(this.femsId + ": Unable to save coverage: " + e.getMessage());
+		}
+	}
+
+	private static ZonedDateTime toDate(long second, ZonedDateTime zone) {
+		return ZonedDateTime.ofInstant(Instant.ofEpochSecond(second), zone.getZone());
+	}
+}
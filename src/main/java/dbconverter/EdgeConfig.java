@@ -1,6 +1,13 @@
 package dbconverter;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -10,6 +17,9 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonNull;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
 
 import dbconverter.EdgeConfig.Factory.Property;
 import dbconverter.OpenemsError.OpenemsNamedException;
@@ -226,18 +236,66 @@ public class EdgeConfig {
 		}
 	}
 
+	/**
+	 * Immutable lookup tables of the Component-IDs by Factory and by Nature, in
+	 * the order of the Component-IDs.
+	 */
+	private static class Index {
+		private final Map<String, List<String>> componentIdsByFactory;
+		private final Map<String, List<String>> componentIdsByNature;
+
+		private Index(TreeMap<String, Component> components, TreeMap<String, Factory> factories) {
+			Map<String, List<String>> byFactory = new HashMap<>();
+			Map<String, List<String>> byNature = new HashMap<>();
+			for (Entry<String, Component> componentEntry : components.entrySet()) {
+				String factoryId = componentEntry.getValue().factoryId;
+				byFactory.computeIfAbsent(factoryId, id -> new ArrayList<>()).add(componentEntry.getKey());
+				Factory factory = factories.get(factoryId);
+				if (factory == null) {
+					continue;
+				}
+				for (String nature : new LinkedHashSet<>(Arrays.asList(factory.natureIds))) {
+					byNature.computeIfAbsent(nature, id -> new ArrayList<>()).add(componentEntry.getKey());
+				}
+			}
+			this.componentIdsByFactory = freeze(byFactory);
+			this.componentIdsByNature = freeze(byNature);
+		}
+
+		private static Map<String, List<String>> freeze(Map<String, List<String>> map) {
+			for (Entry<String, List<String>> entry : map.entrySet()) {
+				entry.setValue(Collections.unmodifiableList(entry.getValue()));
+			}
+			return Collections.unmodifiableMap(map);
+		}
+	}
+
 	private final TreeMap<String, Component> components = new TreeMap<>();
 	private final TreeMap<String, Factory> factories = new TreeMap<>();
 
+	// built on first lookup; dropped when a Component or Factory is added
+	private volatile Index index = null;
+
 	public EdgeConfig() {
 	}
 
 	public void addComponent(String id, Component component) {
 		this.components.put(id, component);
+		this.index = null;
 	}
 
 	public void addFactory(String id, Factory factory) {
 		this.factories.put(id, factory);
+		this.index = null;
+	}
+
+	private Index getIndex() {
+		Index result = this.index;
+		if (result == null) {
+			result = new Index(this.components, this.factories);
+			this.index = result;
+		}
+		return result;
 	}
 
 	public TreeMap<String, Component> getComponents() {
@@ -252,16 +310,10 @@ public class EdgeConfig {
 	 * Get Component-IDs of Component instances by the given Factory.
 	 * 
 	 * @param factoryId the given Factory.
-	 * @return a List of Component-IDs.
+	 * @return an unmodifiable List of Component-IDs.
 	 */
 	public List<String> getComponentIdsByFactory(String factoryId) {
-		List<String> result = new ArrayList<>();
-		for (Entry<String, Component> componentEntry : this.components.entrySet()) {
-			if (factoryId.equals(componentEntry.getValue().factoryId)) {
-				result.add(componentEntry.getKey());
-			}
-		}
-		return result;
+		return this.getIndex().componentIdsByFactory.getOrDefault(factoryId, Collections.emptyList());
 	}
 
 	/**
@@ -272,10 +324,8 @@ public class EdgeConfig {
 	 */
 	public List<Component> getComponentsByFactory(String factoryId) {
 		List<Component> result = new ArrayList<>();
-		for (Entry<String, Component> componentEntry : this.components.entrySet()) {
-			if (factoryId.equals(componentEntry.getValue().factoryId)) {
-				result.add(componentEntry.getValue());
-			}
+		for (String componentId : this.getComponentIdsByFactory(factoryId)) {
+			result.add(this.components.get(componentId));
 		}
 		return result;
 	}
@@ -284,24 +334,10 @@ public class EdgeConfig {
 	 * Get Component-IDs of Components that implement the given Nature.
 	 * 
 	 * @param nature the given Nature.
-	 * @return a List of Component-IDs.
+	 * @return an unmodifiable List of Component-IDs.
 	 */
 	public List<String> getComponentsImplementingNature(String nature) {
-		List<String> result = new ArrayList<>();
-		for (Entry<String, Component> componentEntry : this.components.entrySet()) {
-			String factoryId = componentEntry.getValue().factoryId;
-			Factory factory = this.factories.get(factoryId);
-			if (factory == null) {
-				continue;
-			}
-			for (String thisNature : factory.natureIds) {
-				if (nature.equals(thisNature)) {
-					result.add(componentEntry.getKey());
-					break;
-				}
-			}
-		}
-		return result;
+		return this.getIndex().componentIdsByNature.getOrDefault(nature, Collections.emptyList());
 	}
 
 	/**
@@ -391,6 +427,320 @@ public class EdgeConfig {
 		return result;
 	}
 
+	/**
+	 * Defines what {@link EdgeConfig#parse(Reader, Content)} reads; everything
+	 * else is skipped without being materialized.
+	 */
+	public static enum Content {
+		/**
+		 * Components with their Factory-IDs, but without properties.
+		 */
+		COMPONENTS,
+		/**
+		 * Components with their Factory-IDs and Factories with their Nature-IDs,
+		 * but without properties.
+		 */
+		COMPONENTS_AND_FACTORIES,
+		/**
+		 * Everything that {@link EdgeConfig#fromJson(JsonObject)} reads.
+		 */
+		ALL;
+	}
+
+	/**
+	 * Creates an EdgeConfig from a JSON String.
+	 * 
+	 * @param json    the configuration in JSON format
+	 * @param content what to read
+	 * @return the EdgeConfig
+	 * @throws OpenemsNamedException on error
+	 * @see #parse(Reader, Content)
+	 */
+	public static EdgeConfig parse(String json, Content content) throws OpenemsNamedException {
+		return EdgeConfig.parse(new StringReader(json), content);
+	}
+
+	/**
+	 * Creates an EdgeConfig from JSON without building a JSON tree first.
+	 * 
+	 * <p>
+	 * The JSON is read as a stream; only what is requested by the
+	 * {@link Content} is materialized, e.g. the properties of the Components are
+	 * skipped unless {@link Content#ALL} is requested. Like
+	 * {@link #fromJson(JsonObject)} this reads the current and the old
+	 * 'things/meta' format.
+	 * 
+	 * @param json    the configuration in JSON format
+	 * @param content what to read
+	 * @return the EdgeConfig
+	 * @throws OpenemsNamedException on error
+	 */
+	public static EdgeConfig parse(Reader json, Content content) throws OpenemsNamedException {
+		// the format is known only at the end; members and errors of both formats
+		// are kept apart and dispatched like in fromJson()
+		EdgeConfig result = new EdgeConfig();
+		EdgeConfig oldResult = new EdgeConfig();
+		List<OpenemsNamedException> errors = new ArrayList<>();
+		List<OpenemsNamedException> oldErrors = new ArrayList<>();
+		boolean hasComponents = false;
+		boolean hasFactories = false;
+		boolean hasThings = false;
+		boolean hasMeta = false;
+		JsonParser parser = new JsonParser();
+		try (JsonReader reader = new JsonReader(json)) {
+			reader.setLenient(true);
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String name = reader.nextName();
+				switch (name) {
+				case "components":
+					hasComponents = true;
+					EdgeConfig.readComponents(reader, parser, content, result, errors);
+					break;
+				case "factories":
+					hasFactories = true;
+					if (content != Content.COMPONENTS) {
+						EdgeConfig.readFactories(reader, parser, content, result, errors);
+					} else {
+						reader.skipValue();
+					}
+					break;
+				case "things":
+					hasThings = true;
+					EdgeConfig.readThings(reader, parser, content, oldResult, oldErrors);
+					break;
+				case "meta":
+					hasMeta = true;
+					if (content != Content.COMPONENTS) {
+						EdgeConfig.readMetas(reader, oldResult, oldErrors);
+					} else {
+						reader.skipValue();
+					}
+					break;
+				default:
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+		} catch (IOException | IllegalStateException | JsonParseException e) {
+			throw OpenemsError.JSON_PARSE_FAILED.exception("EdgeConfig", e.getMessage());
+		}
+		if (hasThings && hasMeta) {
+			if (!oldErrors.isEmpty()) {
+				throw oldErrors.get(0);
+			}
+			return oldResult;
+		}
+		if (!hasComponents) {
+			throw OpenemsError.JSON_HAS_NO_MEMBER.exception("EdgeConfig", "components");
+		}
+		if (!hasFactories) {
+			throw OpenemsError.JSON_HAS_NO_MEMBER.exception("EdgeConfig", "factories");
+		}
+		if (!errors.isEmpty()) {
+			throw errors.get(0);
+		}
+		return result;
+	}
+
+	private static void readComponents(JsonReader reader, JsonParser parser, Content content, EdgeConfig result,
+			List<OpenemsNamedException> errors) throws IOException {
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String id = reader.nextName();
+			String factoryId = null;
+			boolean hasProperties = false;
+			TreeMap<String, JsonElement> properties = new TreeMap<>();
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String name = reader.nextName();
+				if (name.equals("factoryId")) {
+					factoryId = reader.nextString();
+				} else if (name.equals("properties")) {
+					hasProperties = true;
+					if (content == Content.ALL) {
+						reader.beginObject();
+						while (reader.hasNext()) {
+							properties.put(reader.nextName(), parser.parse(reader));
+						}
+						reader.endObject();
+					} else {
+						reader.skipValue();
+					}
+				} else {
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+			if (factoryId == null) {
+				errors.add(new OpenemsNamedException(OpenemsError.JSON_HAS_NO_MEMBER, id, "factoryId"));
+				continue;
+			}
+			if (!hasProperties) {
+				errors.add(new OpenemsNamedException(OpenemsError.JSON_HAS_NO_MEMBER, id, "properties"));
+				continue;
+			}
+			result.addComponent(id, new Component(factoryId, properties));
+		}
+		reader.endObject();
+	}
+
+	private static void readFactories(JsonReader reader, JsonParser parser, Content content, EdgeConfig result,
+			List<OpenemsNamedException> errors) throws IOException {
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String id = reader.nextName();
+			String name = null;
+			String description = null;
+			String[] natureIds = null;
+			boolean hasProperties = false;
+			List<Property> properties = new ArrayList<>();
+			reader.beginObject();
+			while (reader.hasNext()) {
+				switch (reader.nextName()) {
+				case "name":
+					name = reader.nextString();
+					break;
+				case "description":
+					description = reader.nextString();
+					break;
+				case "natureIds":
+					natureIds = EdgeConfig.readStrings(reader);
+					break;
+				case "properties":
+					hasProperties = true;
+					if (content == Content.ALL) {
+						reader.beginArray();
+						while (reader.hasNext()) {
+							try {
+								properties.add(Property.fromJson(parser.parse(reader)));
+							} catch (OpenemsNamedException e) {
+								errors.add(e);
+							}
+						}
+						reader.endArray();
+					} else {
+						reader.skipValue();
+					}
+					break;
+				default:
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+			if (name == null) {
+				errors.add(new OpenemsNamedException(OpenemsError.JSON_HAS_NO_MEMBER, id, "name"));
+				continue;
+			}
+			if (description == null) {
+				errors.add(new OpenemsNamedException(OpenemsError.JSON_HAS_NO_MEMBER, id, "description"));
+				continue;
+			}
+			if (natureIds == null) {
+				errors.add(new OpenemsNamedException(OpenemsError.JSON_HAS_NO_MEMBER, id, "natureIds"));
+				continue;
+			}
+			if (!hasProperties) {
+				errors.add(new OpenemsNamedException(OpenemsError.JSON_HAS_NO_MEMBER, id, "properties"));
+				continue;
+			}
+			result.addFactory(id,
+					new Factory(name, description, properties.toArray(new Property[properties.size()]), natureIds));
+		}
+		reader.endObject();
+	}
+
+	private static void readThings(JsonReader reader, JsonParser parser, Content content, EdgeConfig result,
+			List<OpenemsNamedException> errors) throws IOException {
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String key = reader.nextName();
+			String id = null;
+			String clazz = null;
+			TreeMap<String, JsonElement> properties = new TreeMap<>();
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String name = reader.nextName();
+				switch (name) {
+				case "id":
+					id = reader.nextString();
+					break;
+				case "class":
+					clazz = reader.nextString();
+					break;
+				case "alias":
+					reader.skipValue();
+					break;
+				default:
+					if (content == Content.ALL) {
+						JsonElement value = parser.parse(reader);
+						if (value.isJsonPrimitive()) {
+							// ignore everything but JSON-Primitives
+							properties.put(name, value);
+						}
+					} else {
+						reader.skipValue();
+					}
+				}
+			}
+			reader.endObject();
+			if (id == null) {
+				errors.add(new OpenemsNamedException(OpenemsError.JSON_HAS_NO_MEMBER, key, "id"));
+				continue;
+			}
+			if (clazz == null) {
+				errors.add(new OpenemsNamedException(OpenemsError.JSON_HAS_NO_MEMBER, key, "class"));
+				continue;
+			}
+			result.addComponent(id, new EdgeConfig.Component(clazz, properties));
+		}
+		reader.endObject();
+	}
+
+	private static void readMetas(JsonReader reader, EdgeConfig result, List<OpenemsNamedException> errors)
+			throws IOException {
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String key = reader.nextName();
+			String id = null;
+			String[] implement = null;
+			reader.beginObject();
+			while (reader.hasNext()) {
+				switch (reader.nextName()) {
+				case "class":
+					id = reader.nextString();
+					break;
+				case "implements":
+					implement = EdgeConfig.readStrings(reader);
+					break;
+				default:
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+			if (id == null) {
+				errors.add(new OpenemsNamedException(OpenemsError.JSON_HAS_NO_MEMBER, key, "class"));
+				continue;
+			}
+			if (implement == null) {
+				errors.add(new OpenemsNamedException(OpenemsError.JSON_HAS_NO_MEMBER, key, "implements"));
+				continue;
+			}
+			result.addFactory(id, new EdgeConfig.Factory(id, "", new Property[0], implement));
+		}
+		reader.endObject();
+	}
+
+	private static String[] readStrings(JsonReader reader) throws IOException {
+		List<String> result = new ArrayList<>();
+		reader.beginArray();
+		while (reader.hasNext()) {
+			result.add(reader.nextString());
+		}
+		reader.endArray();
+		return result.toArray(new String[result.size()]);
+	}
+
 	@Deprecated
 	private static EdgeConfig fromOldJsonFormat(JsonObject json) throws OpenemsNamedException {
 		EdgeConfig result = new EdgeConfig();
@@ -0,0 +1,178 @@
+package dbconverter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.influxdb.dto.QueryResult;
+import org.influxdb.dto.QueryResult.Result;
+import org.influxdb.dto.QueryResult.Series;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import dbconverter.influx.Influx;
+
+/**
+ * Discovers the first ever timestamp of many FEMS at once and caches them on
+ * disk.
+ *
+ * <p>
+ * Instead of one 'LIMIT 1' query per FEMS, {@link #discover(int[])} queries
+ * 'first()' of the SoC channel grouped by the 'fems' tag for
+ * {@link #BATCH_SIZE} FEMS per query. The first timestamp of a FEMS does not
+ * change once it has data, so known timestamps are never queried again.
+ */
+public class FirstTimestamps {
+
+	/**
+	 * The cache file.
+	 */
+	public static String FILE = "cache/first-timestamps.json";
+
+	/**
+	 * Maximum number of FEMS per query.
+	 */
+	public static int BATCH_SIZE = 100;
+
+	private final static Map<Integer, ZonedDateTime> CACHE = new HashMap<>();
+	private static boolean loaded = false;
+
+	private FirstTimestamps() {
+	}
+
+	/**
+	 * Queries the first timestamps of all given FEMS that are not cached yet.
+	 * FEMS without data are left out; {@link #get(int)} falls back to a query
+	 * for the single FEMS.
+	 *
+	 * @param femsIds the FEMS-IDs
+	 * @throws Exception on error
+	 */
+	public static synchronized void discover(int[] femsIds) throws Exception {
+		load();
+		List<Integer> missing = new ArrayList<>();
+		for (int femsId : femsIds) {
+			if (!CACHE.containsKey(femsId) && !missing.contains(femsId)) {
+				missing.add(femsId);
+			}
+		}
+		if (missing.isEmpty()) {
+			return;
+		}
+		for (int i = 0; i < missing.size(); i += Math.max(BATCH_SIZE, 1)) {
+			List<Integer> batch = missing.subList(i, Math.min(i + Math.max(BATCH_SIZE, 1), missing.size()));
+			CACHE.putAll(query(batch));
+		}
+		save();
+		System.out.println("First timestamps are known for " + CACHE.size() + " FEMS");
+	}
+
+	/**
+	 * Gets the first timestamp of the FEMS; from the cache if possible.
+	 *
+	 * @param femsId the FEMS-ID
+	 * @return the first timestamp
+	 * @throws Exception on error
+	 */
+	public static ZonedDateTime get(int femsId) throws Exception {
+		synchronized (FirstTimestamps.class) {
+			load();
+			ZonedDateTime result = CACHE.get(femsId);
+			if (result != null) {
+				return result;
+			}
+		}
+		// query without the lock, so that parallel FEMS do not wait for each other
+		ZonedDateTime result = Utils.getFirstTimestamp(femsId);
+		synchronized (FirstTimestamps.class) {
+			CACHE.put(femsId, result);
+			save();
+		}
+		return result;
+	}
+
+	private static Map<Integer, ZonedDateTime> query(List<Integer> femsIds) throws Exception {
+		List<String> conditions = new ArrayList<>();
+		for (int femsId : femsIds) {
+			conditions.add("fems = '" + femsId + "'");
+		}
+		QueryResult queryResult = Influx.query("SELECT first(\"" + Utils.getSocField() + "\") FROM "
+				+ new Settings().INFLUX_SOURCE_MEASUREMENT + " WHERE time > '2010-01-01' AND ("
+				+ String.join(" OR ", conditions) + ") GROUP BY fems");
+		if (queryResult.getError() != null) {
+			throw new Exception("Unable to query first timestamps: " + queryResult.getError());
+		}
+		Map<Integer, ZonedDateTime> result = new HashMap<>();
+		for (Result r : queryResult.getResults()) {
+			if (r.getError() != null) {
+				throw new Exception("Unable to query first timestamps: " + r.getError());
+			}
+			if (r.getSeries() == null) {
+				continue;
+			}
+			for (Series series : r.getSeries()) {
+				if (series.getTags() == null || series.getValues().isEmpty()) {
+					continue;
+				}
+				int femsId = Integer.parseInt(series.getTags().get("fems"));
+				long timestamp = Influx.toTimestamp(series.getValues().get(0).get(0));
+				result.put(femsId, ZonedDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneOffset.UTC));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Describes where the timestamps come from; a cache of another source is
+	 * not used.
+	 */
+	private static String getSource() {
+		return new Settings().INFLUX_SOURCE_MEASUREMENT + "/" + Utils.getSocField();
+	}
+
+	private static void load() throws Exception {
+		if (loaded) {
+			return;
+		}
+		loaded = true;
+		Path path = Paths.get(FILE);
+		if (!Files.exists(path)) {
+			return;
+		}
+		JsonObject json = JsonUtils.parseToJsonObject(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+		if (!JsonUtils.getAsString(json, "source").equals(getSource())) {
+			return;
+		}
+		for (Entry<String, JsonElement> entry : JsonUtils.getAsJsonObject(json, "timestamps").entrySet()) {
+			CACHE.put(Integer.parseInt(entry.getKey()), ZonedDateTime
+					.ofInstant(Instant.ofEpochMilli(entry.getValue().getAsLong()), ZoneOffset.UTC));
+		}
+	}
+
+	private static void save() {
+		JsonObject timestamps = new JsonObject();
+		for (Entry<Integer, ZonedDateTime> entry : CACHE.entrySet()) {
+			timestamps.addProperty(String.valueOf(entry.getKey()), entry.getValue().toInstant().toEpochMilli());
+		}
+		JsonObject json = JsonUtils.buildJsonObject() //
+				.addProperty("source", getSource()) //
+				.add("timestamps", timestamps) //
+				.build();
+		try {
+			Utils.writeAtomically(Paths.get(FILE), json.toString());
+		} catch (IOException e) {
+			System.out.println("Unable to save first timestamps: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,570 @@
+package dbconverter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.influxdb.dto.QueryResult;
+import org.influxdb.dto.QueryResult.Result;
+import org.influxdb.dto.QueryResult.Series;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import dbconverter.EdgeConfig.Component;
+import dbconverter.EdgeConfig.Factory;
+import dbconverter.Settings.Types;
+import dbconverter.influx.Influx;
+import dbconverter.influx.Influx.QueryResultConsumer;
+
+/**
+ * Generates a synthetic fleet of FEMS - their EdgeConfig and the time series
+ * of every channel in {@link Converter#CHANNELS} - to load test the Converter
+ * without Influx and Odoo.
+ *
+ * <p>
+ * Everything is derived from the seed, the FEMS-ID, the channel and the
+ * timestamp, so any period of any FEMS can be generated again without keeping
+ * state - in-process via {@link #query} or as line protocol via
+ * {@link #writeLineProtocol}. Run {@link #main} to write the configs and line
+ * protocol files (millisecond precision) of a whole fleet to a directory:
+ *
+ * <pre>
+ * java -cp ... dbconverter.Generator -OUTPUT=fleet -FEMS_COUNT=100 -DAYS=365
+ * </pre>
+ */
+public class Generator {
+
+	private final static Pattern cliArgPattern = Pattern.compile("^-([^=\\s]+)=(\\S*)$");
+
+	/**
+	 * Maximum number of Components per kind for which {@link Converter#CHANNELS}
+	 * has channels.
+	 */
+	private final static int MAX_ESS_COUNT = 4;
+	private final static int MAX_PRODUCTION_METER_COUNT = 4;
+	private final static int MAX_CHARGER_COUNT = 2;
+	private final static int MAX_EVCS_COUNT = 1;
+
+	/**
+	 * Length of the periods that are missing as a whole with a probability of
+	 * {@link #gapRatio}.
+	 */
+	private final static long GAP_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+	private static Types TYPE = App.TYPE;
+	private static long SEED = 0;
+	private static String MEASUREMENT = null;
+	private static String OUTPUT = "fleet";
+	private static int FIRST_FEMS = 1;
+	private static int FEMS_COUNT = 10;
+	private static String FROM_DATE = "2019-01-01T00:00:00";
+	private static int DAYS = 7;
+	private static int INTERVAL_SECONDS = 1;
+	private static double GAP_RATIO = 0.01;
+	private static double NULL_RATIO = 0.05;
+	private static int ESS_COUNT = 2;
+	private static int PRODUCTION_METER_COUNT = 2;
+	private static int CHARGER_COUNT = 0;
+	private static int EVCS_COUNT = 1;
+	private static double OLD_FORMAT_RATIO = 0.5;
+
+	private final Types type;
+	private final Converter converter;
+	private final long seed;
+
+	private int intervalSeconds = 1;
+	private double gapRatio = 0.01;
+	private double nullRatio = 0.05;
+	private int essCount = 2;
+	private int productionMeterCount = 2;
+	private int chargerCount = 0;
+	private int evcsCount = 1;
+	private double oldFormatRatio = 0.5;
+
+	public Generator(Types type, long seed) {
+		this.type = type;
+		this.converter = new Converter(type);
+		this.seed = seed;
+	}
+
+	public Converter getConverter() {
+		return this.converter;
+	}
+
+	/**
+	 * Sets the interval between two rows; OpenEMS writes once per second.
+	 */
+	public Generator setIntervalSeconds(int intervalSeconds) {
+		this.intervalSeconds = Math.max(intervalSeconds, 1);
+		return this;
+	}
+
+	/**
+	 * Sets the share of hours that have no rows at all.
+	 */
+	public Generator setGapRatio(double gapRatio) {
+		this.gapRatio = gapRatio;
+		return this;
+	}
+
+	/**
+	 * Sets the share of values that are not set.
+	 */
+	public Generator setNullRatio(double nullRatio) {
+		this.nullRatio = nullRatio;
+		return this;
+	}
+
+	/**
+	 * Sets the number of ESS. With more than one ESS, the first one is a cluster
+	 * of the others.
+	 */
+	public Generator setEssCount(int essCount) {
+		this.essCount = Math.max(1, Math.min(essCount, MAX_ESS_COUNT));
+		return this;
+	}
+
+	public Generator setProductionMeterCount(int productionMeterCount) {
+		this.productionMeterCount = Math.max(0, Math.min(productionMeterCount, MAX_PRODUCTION_METER_COUNT));
+		return this;
+	}
+
+	public Generator setChargerCount(int chargerCount) {
+		this.chargerCount = Math.max(0, Math.min(chargerCount, MAX_CHARGER_COUNT));
+		return this;
+	}
+
+	public Generator setEvcsCount(int evcsCount) {
+		this.evcsCount = Math.max(0, Math.min(evcsCount, MAX_EVCS_COUNT));
+		return this;
+	}
+
+	/**
+	 * Sets the share of FEMS whose config is in the old 'things/meta' format.
+	 * Those have no chargers and no EVCS, like OpenEMS v1.
+	 */
+	public Generator setOldFormatRatio(double oldFormatRatio) {
+		this.oldFormatRatio = oldFormatRatio;
+		return this;
+	}
+
+	/**
+	 * Gets whether the config of the FEMS is in the old 'things/meta' format.
+	 *
+	 * @param femsId the FEMS-ID
+	 * @return true for the old format
+	 */
+	public boolean isOldFormat(int femsId) {
+		return this.random(femsId, 0, 0) < this.oldFormatRatio;
+	}
+
+	/**
+	 * Gets the config of the FEMS as JSON, in the format that
+	 * {@link EdgeConfig#fromJson(JsonObject)} reads.
+	 *
+	 * @param femsId the FEMS-ID
+	 * @return the config
+	 */
+	public JsonObject getConfigJson(int femsId) {
+		if (this.isOldFormat(femsId)) {
+			return this.getOldConfigJson(femsId);
+		}
+		EdgeConfig config = new EdgeConfig();
+		String[] essNatures = new String[] { "io.openems.edge.ess.api.ManagedSymmetricEss",
+				"io.openems.edge.ess.api.SymmetricEss" };
+		String[] meterNatures = new String[] { "io.openems.edge.meter.api.SymmetricMeter" };
+		if (this.essCount > 1) {
+			addComponent(config, "ess0", "Ess.Cluster", essNatures);
+		}
+		for (int i = this.essCount > 1 ? 1 : 0; i < this.essCount; i++) {
+			addComponent(config, "ess" + i, "Fenecon.Pro.Ess", essNatures);
+		}
+		addComponent(config, "meter0", "Meter.SOCOMEC.DirisA14", meterNatures);
+		for (int i = 1; i <= this.productionMeterCount; i++) {
+			addComponent(config, "meter" + i, i % 2 == 1 ? "Fenecon.Pro.PvMeter" : "Meter.CarloGavazzi.EM300",
+					meterNatures);
+		}
+		for (int i = 0; i < this.chargerCount; i++) {
+			// "TODO" is the only charger factory the Converter knows
+			addComponent(config, "charger" + i, "TODO", new String[] { "io.openems.edge.ess.dccharger.api.EssDcCharger" });
+		}
+		for (int i = 0; i < this.evcsCount; i++) {
+			addComponent(config, "evcs" + i, "Evcs.Keba.KeContact", new String[] { "io.openems.edge.evcs.api.Evcs" });
+		}
+		return config.toJson();
+	}
+
+	private static void addComponent(EdgeConfig config, String id, String factoryId, String[] natureIds) {
+		TreeMap<String, JsonElement> properties = new TreeMap<>();
+		properties.put("enabled", new JsonPrimitive(true));
+		config.addComponent(id, new Component(factoryId, properties));
+		config.addFactory(factoryId, new Factory(factoryId, "", new Factory.Property[0], natureIds));
+	}
+
+	private JsonObject getOldConfigJson(int femsId) {
+		JsonObject things = new JsonObject();
+		JsonObject meta = new JsonObject();
+		String essClass = "io.openems.impl.device.pro.FeneconProEss";
+		String clusterClass = "io.openems.impl.device.system.asymmetricsymmetriccombinationess.AsymmetricSymmetricCombinationEssNature";
+		String gridMeterClass = "io.openems.impl.device.socomec.SocomecMeter";
+		String productionMeterClass = "io.openems.impl.device.pro.FeneconProPvMeter";
+		if (this.essCount > 1) {
+			addThing(things, meta, "ess0", clusterClass, "io.openems.api.device.nature.ess.EssNature");
+		}
+		for (int i = this.essCount > 1 ? 1 : 0; i < this.essCount; i++) {
+			addThing(things, meta, "ess" + i, essClass, "io.openems.api.device.nature.ess.AsymmetricEssNature");
+		}
+		addThing(things, meta, "meter0", gridMeterClass, "io.openems.api.device.nature.meter.SymmetricMeterNature");
+		for (int i = 1; i <= this.productionMeterCount; i++) {
+			addThing(things, meta, "meter" + i, i % 2 == 1 ? productionMeterClass : gridMeterClass,
+					"io.openems.api.device.nature.meter.MeterNature");
+		}
+		JsonObject result = new JsonObject();
+		result.add("things", things);
+		result.add("meta", meta);
+		return result;
+	}
+
+	private static void addThing(JsonObject things, JsonObject meta, String id, String clazz, String nature) {
+		JsonObject thing = new JsonObject();
+		thing.addProperty("id", id);
+		thing.addProperty("class", clazz);
+		thing.addProperty("alias", "");
+		things.add(id, thing);
+		JsonObject m = new JsonObject();
+		m.addProperty("class", clazz);
+		JsonArray implement = new JsonArray();
+		implement.add(nature);
+		m.add("implements", implement);
+		meta.add(clazz, m);
+	}
+
+	/**
+	 * Gets the config of the FEMS.
+	 *
+	 * @param femsId the FEMS-ID
+	 * @return the EdgeConfig
+	 * @throws Exception on error
+	 */
+	public EdgeConfig getConfig(int femsId) throws Exception {
+		return EdgeConfig.fromJson(this.getConfigJson(femsId));
+	}
+
+	/**
+	 * Gets the Things of the FEMS; null for {@link Types#DESS}.
+	 *
+	 * @param femsId the FEMS-ID
+	 * @return the Things
+	 * @throws Exception on error
+	 */
+	public Utils.Things getThings(int femsId) throws Exception {
+		if (this.type != Types.OPENEMS_V1) {
+			return null;
+		}
+		return Utils.getThings(this.getConfig(femsId));
+	}
+
+	/**
+	 * Generates the given period in QueryResults of at most
+	 * {@link Influx#QUERY_CHUNK_SIZE} rows, like {@link Influx#query(String,
+	 * QueryResultConsumer)} does. Timestamps are RFC3339 strings.
+	 *
+	 * @param femsId     the FEMS-ID
+	 * @param fromMillis the start of the period (inclusive)
+	 * @param toMillis   the end of the period (inclusive)
+	 * @param channels   the channels to generate
+	 * @param consumer   receives every QueryResult
+	 * @throws Exception on error
+	 */
+	public void query(int femsId, long fromMillis, long toMillis, Collection<String> channels,
+			QueryResultConsumer consumer) throws Exception {
+		List<String> columns = new ArrayList<>(new TreeSet<>(channels));
+		columns.add(0, "time");
+		List<List<Object>> values = new ArrayList<>();
+		for (long timestamp = this.firstRow(fromMillis); timestamp <= toMillis; timestamp = this
+				.nextRow(timestamp)) {
+			if (this.isGap(femsId, timestamp)) {
+				continue;
+			}
+			List<Object> row = new ArrayList<>(columns.size());
+			row.add(Instant.ofEpochMilli(timestamp).toString());
+			for (int i = 1; i < columns.size(); i++) {
+				row.add(this.getValue(femsId, columns.get(i), timestamp));
+			}
+			values.add(row);
+			if (values.size() >= Influx.QUERY_CHUNK_SIZE) {
+				consumer.accept(toQueryResult(columns, values));
+				values = new ArrayList<>();
+			}
+		}
+		if (!values.isEmpty()) {
+			consumer.accept(toQueryResult(columns, values));
+		}
+	}
+
+	/**
+	 * Generates the given period in one QueryResult.
+	 *
+	 * @param femsId     the FEMS-ID
+	 * @param fromMillis the start of the period (inclusive)
+	 * @param toMillis   the end of the period (inclusive)
+	 * @param channels   the channels to generate
+	 * @return the QueryResult
+	 * @throws Exception on error
+	 */
+	public QueryResult query(int femsId, long fromMillis, long toMillis, Collection<String> channels)
+			throws Exception {
+		List<String> columns = new ArrayList<>();
+		List<List<Object>> values = new ArrayList<>();
+		this.query(femsId, fromMillis, toMillis, channels, queryResult -> {
+			Series series = queryResult.getResults().get(0).getSeries().get(0);
+			columns.clear();
+			columns.addAll(series.getColumns());
+			values.addAll(series.getValues());
+		});
+		return toQueryResult(columns, values);
+	}
+
+	private static QueryResult toQueryResult(List<String> columns, List<List<Object>> values) {
+		Result result = new Result();
+		if (!values.isEmpty()) {
+			Series series = new Series();
+			series.setName("data");
+			series.setColumns(columns);
+			series.setValues(values);
+			result.setSeries(Arrays.asList(series));
+		}
+		QueryResult queryResult = new QueryResult();
+		queryResult.setResults(Arrays.asList(result));
+		return queryResult;
+	}
+
+	/**
+	 * Writes the given period of all {@link Converter#CHANNELS} as line protocol
+	 * with millisecond precision.
+	 *
+	 * @param femsId      the FEMS-ID
+	 * @param measurement the measurement
+	 * @param fromMillis  the start of the period (inclusive)
+	 * @param toMillis    the end of the period (inclusive)
+	 * @param writer      the Writer
+	 * @return the number of lines
+	 * @throws IOException on error
+	 */
+	public long writeLineProtocol(int femsId, String measurement, long fromMillis, long toMillis, Writer writer)
+			throws IOException {
+		String[] channels = new TreeSet<>(this.converter.CHANNELS).toArray(new String[0]);
+		String prefix = measurement + ",fems=" + femsId + " ";
+		StringBuilder line = new StringBuilder();
+		long lines = 0;
+		for (long timestamp = this.firstRow(fromMillis); timestamp <= toMillis; timestamp = this
+				.nextRow(timestamp)) {
+			if (this.isGap(femsId, timestamp)) {
+				continue;
+			}
+			line.setLength(0);
+			line.append(prefix);
+			boolean first = true;
+			for (String channel : channels) {
+				Double value = this.getValue(femsId, channel, timestamp);
+				if (value == null) {
+					continue;
+				}
+				if (!first) {
+					line.append(',');
+				}
+				first = false;
+				// values are whole numbers; without 'i' suffix they are still written as float
+				line.append(channel).append('=').append(value.longValue());
+			}
+			if (first) {
+				// line protocol needs at least one field
+				continue;
+			}
+			line.append(' ').append(timestamp).append('\n');
+			writer.append(line);
+			lines++;
+		}
+		return lines;
+	}
+
+	private long firstRow(long fromMillis) {
+		long interval = this.intervalSeconds * 1000L;
+		return Math.floorDiv(fromMillis + interval - 1, interval) * interval;
+	}
+
+	private long nextRow(long timestamp) {
+		return timestamp + this.intervalSeconds * 1000L;
+	}
+
+	private boolean isGap(int femsId, long timestamp) {
+		return this.random(femsId, 1, Math.floorDiv(timestamp, GAP_MILLIS)) < this.gapRatio;
+	}
+
+	/**
+	 * Gets the value of the channel at the timestamp: a state of charge between 0
+	 * and 100, a monotonically increasing energy counter or a power that follows
+	 * the time of day.
+	 *
+	 * @param femsId    the FEMS-ID
+	 * @param channel   the channel name
+	 * @param timestamp the timestamp
+	 * @return the value; null if not set
+	 */
+	public Double getValue(int femsId, String channel, long timestamp) {
+		long channelHash = channel.hashCode();
+		if (this.random(femsId, channelHash, timestamp) < this.nullRatio) {
+			return null;
+		}
+		double seconds = timestamp / 1000.0;
+		double shape = this.random(femsId, channelHash, 0);
+		if (channel.endsWith("Soc") || channel.equals(Converter.DESS_SOC)) {
+			double day = 2 * Math.PI * seconds / 86_400;
+			return (double) Math.round(50 + 45 * Math.sin(day + shape * 2 * Math.PI));
+		}
+		if (channel.endsWith("Energy") || channel.endsWith("Charging") || channel.endsWith("Cumulative_Output")
+				|| channel.contains("Accumulative")) {
+			// Wh since 2010 with up to 5 kW average
+			double rate = 5_000 * shape / 3_600;
+			return (double) Math.round((seconds - 1_262_304_000) * rate);
+		}
+		double day = 2 * Math.PI * (seconds % 86_400) / 86_400;
+		double noise = this.random(femsId, channelHash, timestamp + 1) - 0.5;
+		return (double) Math.round(10_000 * (shape - 0.5) * Math.sin(day) + 500 * noise);
+	}
+
+	/**
+	 * Gets a pseudo-random number in [0, 1) for the given inputs.
+	 */
+	private double random(long femsId, long a, long b) {
+		long x = this.seed;
+		x = mix(x ^ femsId);
+		x = mix(x ^ a);
+		x = mix(x ^ b);
+		return (x >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * SplitMix64 finalizer.
+	 */
+	private static long mix(long z) {
+		z += 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	public static void main(String[] args) throws Exception {
+		parseArgs(args);
+
+		Generator generator = new Generator(TYPE, SEED) //
+				.setIntervalSeconds(INTERVAL_SECONDS) //
+				.setGapRatio(GAP_RATIO) //
+				.setNullRatio(NULL_RATIO) //
+				.setEssCount(ESS_COUNT) //
+				.setProductionMeterCount(PRODUCTION_METER_COUNT) //
+				.setChargerCount(CHARGER_COUNT) //
+				.setEvcsCount(EVCS_COUNT) //
+				.setOldFormatRatio(OLD_FORMAT_RATIO);
+		String measurement = MEASUREMENT != null ? MEASUREMENT : new Settings().INFLUX_SOURCE_MEASUREMENT;
+		long fromMillis = LocalDateTime.parse(FROM_DATE).toInstant(ZoneOffset.UTC).toEpochMilli();
+		long toMillis = fromMillis + TimeUnit.DAYS.toMillis(DAYS) - 1;
+
+		Path output = Paths.get(OUTPUT);
+		Files.createDirectories(output);
+		for (int femsId = FIRST_FEMS; femsId < FIRST_FEMS + FEMS_COUNT; femsId++) {
+			if (TYPE == Types.OPENEMS_V1) {
+				Files.write(output.resolve("fems" + femsId + ".json"),
+						generator.getConfigJson(femsId).toString().getBytes(StandardCharsets.UTF_8));
+			}
+			long lines;
+			try (BufferedWriter writer = Files.newBufferedWriter(output.resolve("fems" + femsId + ".lp"),
+					StandardCharsets.UTF_8)) {
+				lines = generator.writeLineProtocol(femsId, measurement, fromMillis, toMillis, writer);
+			}
+			System.out.println(femsId + ": " + lines + " lines");
+		}
+	}
+
+	private static void parseArgs(String[] args) throws Exception {
+		for (String arg : args) {
+			Matcher m = cliArgPattern.matcher(arg);
+			if (m.matches()) {
+				String v = m.group(2);
+				switch (m.group(1)) {
+				case "TYPE":
+					TYPE = Types.valueOf(v);
+					break;
+				case "SEED":
+					SEED = Long.parseLong(v);
+					break;
+				case "MEASUREMENT":
+					MEASUREMENT = v;
+					break;
+				case "OUTPUT":
+					OUTPUT = v;
+					break;
+				case "FIRST_FEMS":
+					FIRST_FEMS = Integer.parseInt(v);
+					break;
+				case "FEMS_COUNT":
+					FEMS_COUNT = Integer.parseInt(v);
+					break;
+				case "FROM_DATE":
+					FROM_DATE = v;
+					break;
+				case "DAYS":
+					DAYS = Integer.parseInt(v);
+					break;
+				case "INTERVAL_SECONDS":
+					INTERVAL_SECONDS = Integer.parseInt(v);
+					break;
+				case "GAP_RATIO":
+					GAP_RATIO = Double.parseDouble(v);
+					break;
+				case "NULL_RATIO":
+					NULL_RATIO = Double.parseDouble(v);
+					break;
+				case "ESS_COUNT":
+					ESS_COUNT = Integer.parseInt(v);
+					break;
+				case "PRODUCTION_METER_COUNT":
+					PRODUCTION_METER_COUNT = Integer.parseInt(v);
+					break;
+				case "CHARGER_COUNT":
+					CHARGER_COUNT = Integer.parseInt(v);
+					break;
+				case "EVCS_COUNT":
+					EVCS_COUNT = Integer.parseInt(v);
+					break;
+				case "OLD_FORMAT_RATIO":
+					OLD_FORMAT_RATIO = Double.parseDouble(v);
+					break;
+				default:
+					throw new Exception("illegal parameter: " + m.group(0));
+				}
+			} else {
+				throw new Exception("illegal parameter format: " + arg);
+			}
+		}
+	}
+}
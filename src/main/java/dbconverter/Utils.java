@@ -1,14 +1,23 @@
 package dbconverter;
 
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.AbstractMap;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
@@ -22,15 +31,16 @@ public class Utils {
 
 	/**
 	 * Gets the From-Date from the given string or - if empty - the first ever
-	 * timestamp.
+	 * timestamp; see {@link FirstTimestamps}.
 	 * 
 	 * @param femsId
 	 * @param date
 	 * @return
+	 * @throws Exception on error
 	 */
-	protected static ZonedDateTime getFromDate(int femsId, String date) {
+	protected static ZonedDateTime getFromDate(int femsId, String date) throws Exception {
 		if (date.isEmpty()) {
-			return getFirstTimestamp(femsId);
+			return FirstTimestamps.get(femsId);
 		} else {
 			return LocalDateTime.parse(date).atZone(ZoneId.systemDefault());
 		}
@@ -54,42 +64,12 @@ public class Utils {
 	public static class TimeChunk {
 		ZonedDateTime fromDate;
 		ZonedDateTime toDate;
-	}
-
-	/**
-	 * Splits the period between fromDate and toDate in chunks with length chunkDays
-	 * 
-	 * @param initialFromDate
-	 * @param initialToDate
-	 * @param chunkDays
-	 * @param chunkHours
-	 * @return
-	 */
-	protected static List<TimeChunk> getTimeChunks(ZonedDateTime initialFromDate, ZonedDateTime initialToDate,
-			int chunkDays, int chunkHours) {
-		List<TimeChunk> result = new ArrayList<>();
-
-		ZonedDateTime fromDate = initialFromDate;
-		ZonedDateTime toDate = null;
-		while (toDate == null || toDate.isBefore(initialToDate)) {
-			// get next toDate
-			toDate = fromDate.plusDays(chunkDays);
-			toDate = toDate.plusHours(chunkHours);
-			if (toDate.isAfter(initialToDate)) {
-				toDate = initialToDate;
-			}
-
-			// create chunk
-			TimeChunk chunk = new TimeChunk();
-			chunk.fromDate = fromDate;
-			chunk.toDate = toDate;
-			result.add(chunk);
 
-			// get next fromDate
-			fromDate = toDate;
+		@Override
+		public String toString() {
+			return this.fromDate.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) + " - "
+					+ this.toDate.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
 		}
-
-		return result;
 	}
 
 	public static class Things {
@@ -167,22 +147,68 @@ public class Utils {
 		return result;
 	}
 
-	public static ZonedDateTime getFirstTimestamp(int femsId) {
-		Settings settings = new Settings();
+	/**
+	 * Prints the stack trace of the given Throwable in one piece, prefixed with
+	 * the FEMS-ID, so that it does not interleave with the output of other FEMS.
+	 * 
+	 * @param femsId the FEMS-ID
+	 * @param e      the Throwable
+	 */
+	public static void printStackTrace(int femsId, Throwable e) {
+		StringWriter sw = new StringWriter();
+		e.printStackTrace(new PrintWriter(sw));
+		System.err.print(femsId + ": " + sw.toString());
+	}
 
-		String socField;
+	/**
+	 * Replaces the content of the file atomically: the content is written to a
+	 * temporary file in the same directory, flushed to disk and then renamed, so
+	 * after a crash the file holds either the old or the new content.
+	 *
+	 * @param path    the file
+	 * @param content the new content
+	 * @throws IOException on error
+	 */
+	public static void writeAtomically(Path path, String content) throws IOException {
+		Path directory = path.toAbsolutePath().getParent();
+		Files.createDirectories(directory);
+		Path temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				ByteBuffer buffer = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				channel.force(true);
+			}
+			Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Gets the channel that is used to find the first timestamp of a FEMS.
+	 * 
+	 * @return the channel name
+	 */
+	protected static String getSocField() {
 		switch (App.TYPE) {
 		case DESS:
-			socField = Converter.DESS_SOC;
-			break;
+			return Converter.DESS_SOC;
 		case OPENEMS_V1:
 		default:
-			socField = "ess0/Soc";
-			break;
+			return "ess0/Soc";
 		}
+	}
+
+	public static ZonedDateTime getFirstTimestamp(int femsId) {
+		Settings settings = new Settings();
+
+		String socField = getSocField();
 		QueryResult result = Influx.query("SELECT \"" + socField + "\", time FROM " + settings.INFLUX_SOURCE_MEASUREMENT
 				+ " WHERE fems = '" + femsId + "' AND time > '2010-01-01' LIMIT 1");
-		long timestamp = ((Double) result.getResults().get(0).getSeries().get(0).getValues().get(0).get(0)).longValue();
+		long timestamp = Influx.toTimestamp(result.getResults().get(0).getSeries().get(0).getValues().get(0).get(0));
 		Instant instant = Instant.ofEpochMilli(timestamp);
 		return ZonedDateTime.ofInstant(instant, ZoneOffset.UTC);
 	}
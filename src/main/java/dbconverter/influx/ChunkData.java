@@ -0,0 +1,157 @@
+package dbconverter.influx;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds the data of one query result in columns.
+ *
+ * <p>
+ * Rows are sorted by timestamp. Every channel of the {@link Dictionary} has its
+ * own column of primitive values; a value that is not set is marked in the
+ * null bitmap of its column.
+ */
+public class ChunkData {
+
+	/**
+	 * Maps channel names to column indexes.
+	 */
+	public static class Dictionary {
+
+		private final String[] channels;
+		private final Map<String, Integer> indexes = new HashMap<>();
+
+		public Dictionary(Collection<String> channels) {
+			this.channels = channels.toArray(new String[channels.size()]);
+			Arrays.sort(this.channels);
+			for (int i = 0; i < this.channels.length; i++) {
+				this.indexes.put(this.channels[i], i);
+			}
+		}
+
+		/**
+		 * Gets the column index of the channel.
+		 *
+		 * @param channel the channel name
+		 * @return the index; -1 if the channel is not part of the dictionary
+		 */
+		public int indexOf(String channel) {
+			Integer index = this.indexes.get(channel);
+			if (index == null) {
+				return -1;
+			}
+			return index;
+		}
+
+		public String getChannel(int index) {
+			return this.channels[index];
+		}
+
+		public int size() {
+			return this.channels.length;
+		}
+	}
+
+	/**
+	 * A cursor on one row of a ChunkData.
+	 */
+	public static class Row {
+
+		private final ChunkData data;
+		private int row = 0;
+
+		private Row(ChunkData data) {
+			this.data = data;
+		}
+
+		public void setRow(int row) {
+			this.row = row;
+		}
+
+		public long getTimestamp() {
+			return this.data.getTimestamp(this.row);
+		}
+
+		/**
+		 * Gets the value of the channel in this row.
+		 *
+		 * @param channel the channel name
+		 * @return the value; null if it is not set
+		 */
+		public Double get(String channel) {
+			int column = this.data.dictionary.indexOf(channel);
+			if (column < 0 || this.isNull(column)) {
+				return null;
+			}
+			return this.get(column);
+		}
+
+		public boolean isNull(int column) {
+			return this.data.isNull(column, this.row);
+		}
+
+		/**
+		 * Gets the value of the column in this row.
+		 *
+		 * @param column the column index
+		 * @return the value; undefined if {@link #isNull(int)}
+		 */
+		public double get(int column) {
+			return this.data.get(column, this.row);
+		}
+	}
+
+	private final Dictionary dictionary;
+	private final long[] timestamps;
+	private final double[][] values;
+	private final BitSet[] isSet;
+
+	ChunkData(Dictionary dictionary, long[] timestamps) {
+		this.dictionary = dictionary;
+		this.timestamps = timestamps;
+		this.values = new double[dictionary.size()][];
+		this.isSet = new BitSet[dictionary.size()];
+	}
+
+	public Dictionary getDictionary() {
+		return this.dictionary;
+	}
+
+	public int size() {
+		return this.timestamps.length;
+	}
+
+	public long getTimestamp(int row) {
+		return this.timestamps[row];
+	}
+
+	public boolean isNull(int channel, int row) {
+		BitSet isSet = this.isSet[channel];
+		return isSet == null || !isSet.get(row);
+	}
+
+	public double get(int channel, int row) {
+		return this.values[channel][row];
+	}
+
+	/**
+	 * Creates a cursor that is positioned on the first row.
+	 *
+	 * @return the Row
+	 */
+	public Row row() {
+		return new Row(this);
+	}
+
+	void set(int channel, int row, double value) {
+		if (this.values[channel] == null) {
+			this.values[channel] = new double[this.timestamps.length];
+			this.isSet[channel] = new BitSet(this.timestamps.length);
+		}
+		this.values[channel][row] = value;
+		this.isSet[channel].set(row);
+	}
+}
@@ -0,0 +1,69 @@
+package dbconverter.influx;
+
+import java.util.Arrays;
+
+/**
+ * Holds the fields of one output Point.
+ *
+ * <p>
+ * The channels are fixed on creation; values are primitive and a value that
+ * is not set is marked in a flag. A FieldBuffer is meant to be created once
+ * per worker and cleared between rows, so converting a row does not
+ * allocate.
+ */
+public class FieldBuffer {
+
+	private final String[] channels;
+	private final long[] values;
+	private final boolean[] isSet;
+	private int count = 0;
+
+	public FieldBuffer(String[] channels) {
+		this.channels = channels;
+		this.values = new long[channels.length];
+		this.isSet = new boolean[channels.length];
+	}
+
+	public int size() {
+		return this.channels.length;
+	}
+
+	public String getChannel(int slot) {
+		return this.channels[slot];
+	}
+
+	public boolean isSet(int slot) {
+		return this.isSet[slot];
+	}
+
+	public long get(int slot) {
+		return this.values[slot];
+	}
+
+	public void set(int slot, long value) {
+		if (!this.isSet[slot]) {
+			this.isSet[slot] = true;
+			this.count++;
+		}
+		this.values[slot] = value;
+	}
+
+	/**
+	 * Gets whether no value is set.
+	 *
+	 * @return true if empty
+	 */
+	public boolean isEmpty() {
+		return this.count == 0;
+	}
+
+	/**
+	 * Unsets all values.
+	 */
+	public void clear() {
+		if (this.count > 0) {
+			Arrays.fill(this.isSet, false);
+			this.count = 0;
+		}
+	}
+}
@@ -1,32 +1,226 @@
 package dbconverter.influx;
 
+import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
 
 import org.influxdb.InfluxDB;
-import org.influxdb.InfluxDBFactory;
-import org.influxdb.dto.BatchPoints;
-import org.influxdb.dto.Point;
-import org.influxdb.dto.Point.Builder;
 import org.influxdb.dto.Query;
 import org.influxdb.dto.QueryResult;
 import org.influxdb.dto.QueryResult.Result;
 import org.influxdb.dto.QueryResult.Series;
 
 import dbconverter.Settings;
-import dbconverter.Utils.Things;
+import okhttp3.Credentials;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
 
 public class Influx {
 
+	/**
+	 * Number of rows per response chunk of a streaming query.
+	 */
+	public static int QUERY_CHUNK_SIZE = 10_000;
+
+	/**
+	 * Maximum number of Points per write request.
+	 */
+	public static int WRITE_BATCH_POINTS = 5_000;
+
+	/**
+	 * Maximum size of the uncompressed body of a write request in bytes.
+	 */
+	public static int WRITE_BATCH_BYTES = 4 * 1024 * 1024;
+
+	private final static String CHUNKED_QUERY_DONE = "DONE";
+
+	/**
+	 * Status code of Influx if a write request exceeds 'max-body-size'.
+	 */
+	private final static int HTTP_ENTITY_TOO_LARGE = 413;
+
+	private final static MediaType LINE_PROTOCOL = MediaType.parse("text/plain; charset=utf-8");
+
 	public static QueryResult query(int femsId, ZonedDateTime fromDate, ZonedDateTime toDate, String measurement,
 			Set<String> channels) {
-		// Prepare query string
+		return query(queryString(femsId, fromDate, toDate, measurement, channels));
+	}
+
+	public static QueryResult query(String query) {
+		return query(query, (Traffic) null);
+	}
+
+	/**
+	 * Runs a query.
+	 * 
+	 * @param query   the query
+	 * @param traffic counts the bytes of the response; may be null
+	 * @return the QueryResult
+	 */
+	public static QueryResult query(String query, Traffic traffic) {
+		InfluxDB influxDB = InfluxPool.get();
+		if (traffic != null) {
+			InfluxPool.track(query, traffic);
+		}
+		try {
+			return influxDB.query(new Query(query, Settings.INFLUX_DATABASE), TimeUnit.MILLISECONDS);
+		} finally {
+			if (traffic != null) {
+				InfluxPool.untrack(query);
+			}
+		}
+	}
+
+	/**
+	 * Queries the given period and hands the result to the consumer in chunks of
+	 * {@link #QUERY_CHUNK_SIZE} rows as they arrive.
+	 * 
+	 * @param femsId      the FEMS-ID
+	 * @param fromDate    the start of the period (exclusive)
+	 * @param toDate      the end of the period (exclusive)
+	 * @param measurement the measurement
+	 * @param channels    the channels to select
+	 * @param traffic     counts the bytes of the response; may be null
+	 * @param consumer    receives every chunk of the result
+	 * @throws Exception on error
+	 */
+	public static void query(int femsId, ZonedDateTime fromDate, ZonedDateTime toDate, String measurement,
+			Set<String> channels, Traffic traffic, QueryResultConsumer consumer) throws Exception {
+		query(queryString(femsId, fromDate, toDate, measurement, channels), traffic, consumer);
+	}
+
+	/**
+	 * Queries the given period with millisecond precision; both ends are
+	 * inclusive.
+	 * 
+	 * @param femsId      the FEMS-ID
+	 * @param fromMillis  the start of the period
+	 * @param toMillis    the end of the period
+	 * @param measurement the measurement
+	 * @param channels    the channels to select
+	 * @param traffic     counts the bytes of the response; may be null
+	 * @return the QueryResult
+	 */
+	public static QueryResult query(int femsId, long fromMillis, long toMillis, String measurement,
+			Set<String> channels, Traffic traffic) {
+		StringBuilder query = new StringBuilder("SELECT ");
+		query.append(toChannelAddressList(channels));
+		query.append(" FROM " + measurement + " WHERE ");
+		query.append("fems = '" + femsId + "' AND ");
+		query.append("time >= ");
+		query.append(String.valueOf(fromMillis));
+		query.append("ms");
+		query.append(" AND time <= ");
+		query.append(String.valueOf(toMillis));
+		query.append("ms");
+
+		return query(query.toString(), traffic);
+	}
+
+	/**
+	 * Runs a chunked query and hands every chunk to the consumer in the calling
+	 * thread. At most two chunks are buffered, so the memory needed does not grow
+	 * with the size of the whole result.
+	 * 
+	 * @param query    the query
+	 * @param consumer receives every chunk of the result
+	 * @throws Exception on error
+	 */
+	public static void query(String query, QueryResultConsumer consumer) throws Exception {
+		query(query, (Traffic) null, consumer);
+	}
+
+	/**
+	 * Runs a chunked query like {@link #query(String, QueryResultConsumer)} and
+	 * counts the bytes of the response.
+	 * 
+	 * @param query    the query
+	 * @param traffic  counts the bytes of the response; may be null
+	 * @param consumer receives every chunk of the result
+	 * @throws Exception on error
+	 */
+	public static void query(String query, Traffic traffic, QueryResultConsumer consumer) throws Exception {
+		if (traffic != null) {
+			InfluxPool.track(query, traffic);
+		}
+		try {
+			queryChunked(query, consumer);
+		} finally {
+			if (traffic != null) {
+				InfluxPool.untrack(query);
+			}
+		}
+	}
+
+	private static void queryChunked(String query, QueryResultConsumer consumer) throws Exception {
+		final Object done = new Object();
+		final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(2);
+		final AtomicBoolean cancelled = new AtomicBoolean(false);
+
+		InfluxDB influxDB = InfluxPool.get();
+		influxDB.query(new Query(query, Settings.INFLUX_DATABASE), QUERY_CHUNK_SIZE, (cancellable, queryResult) -> {
+			if (cancelled.get()) {
+				cancellable.cancel();
+				return;
+			}
+			offer(queue, queryResult, cancelled);
+		}, () -> {
+			offer(queue, done, cancelled);
+		}, throwable -> {
+			offer(queue, throwable, cancelled);
+		});
+
+		try {
+			while (true) {
+				Object item = queue.take();
+				if (item == done) {
+					return;
+				}
+				if (item instanceof Throwable) {
+					throw new Exception("Unable to query from Influx: " + ((Throwable) item).getMessage());
+				}
+				QueryResult queryResult = (QueryResult) item;
+				if (queryResult.getError() != null) {
+					if (queryResult.getError().equals(CHUNKED_QUERY_DONE)) {
+						continue;
+					}
+					throw new Exception("Unable to query from Influx: " + queryResult.getError());
+				}
+				consumer.accept(queryResult);
+			}
+		} finally {
+			// stop the background thread in case we did not read all chunks
+			cancelled.set(true);
+			queue.clear();
+		}
+	}
+
+	private static void offer(BlockingQueue<Object> queue, Object item, AtomicBoolean cancelled) {
+		try {
+			while (!cancelled.get()) {
+				if (queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static String queryString(int femsId, ZonedDateTime fromDate, ZonedDateTime toDate, String measurement,
+			Set<String> channels) {
 		StringBuilder query = new StringBuilder("SELECT ");
 		query.append(toChannelAddressList(channels));
 		query.append(" FROM " + measurement + " WHERE ");
@@ -37,22 +231,73 @@ public class Influx {
 		query.append(" AND time < ");
 		query.append(String.valueOf(toDate.toEpochSecond()));
 		query.append("s");
-
-		return query(query.toString());
+		return query.toString();
 	}
 
-	public static QueryResult query(String query) {
-		try (InfluxDB influxDB = InfluxDBFactory.connect(Settings.INFLUX_URL, Settings.INFLUX_USER,
-				Settings.INFLUX_PASSWORD)) {
-			QueryResult queryResult = influxDB.query(new Query(query, Settings.INFLUX_DATABASE), TimeUnit.MILLISECONDS);
-			return queryResult;
+	/**
+	 * Posts the encoded Points to the write endpoint; gzip-compressed if
+	 * {@link InfluxPool#GZIP} is set.
+	 *
+	 * <p>
+	 * The Points are sent in batches of at most {@link #WRITE_BATCH_POINTS}
+	 * Points and {@link #WRITE_BATCH_BYTES} bytes. A batch that Influx rejects as
+	 * too large is split in halves which are sent separately.
+	 *
+	 * @param lineProtocol the LineProtocol
+	 * @param traffic      counts the bytes of the request bodies; may be null
+	 * @throws Exception on error
+	 */
+	public static void write(LineProtocol lineProtocol, Traffic traffic) throws Exception {
+		int lines = lineProtocol.getLines();
+		int from = 0;
+		while (from < lines) {
+			// a single line is always sent, even if it exceeds the limit
+			int to = from + 1;
+			while (to < lines && to - from < WRITE_BATCH_POINTS
+					&& lineProtocol.getOffset(to + 1) - lineProtocol.getOffset(from) <= WRITE_BATCH_BYTES) {
+				to++;
+			}
+			write(lineProtocol, from, to, traffic);
+			from = to;
 		}
 	}
 
-	public static void write(BatchPoints batchPoints) {
-		try (InfluxDB influxDB = InfluxDBFactory.connect(Settings.INFLUX_URL, Settings.INFLUX_USER,
-				Settings.INFLUX_PASSWORD)) {
-			influxDB.write(batchPoints);
+	private static void write(LineProtocol lineProtocol, int fromLine, int toLine, Traffic traffic)
+			throws Exception {
+		HttpUrl url = HttpUrl.parse(Settings.INFLUX_URL).newBuilder() //
+				.addPathSegment("write") //
+				.addQueryParameter("db", Settings.INFLUX_DATABASE) //
+				.addQueryParameter("precision", LineProtocol.toParameter(lineProtocol.getPrecision())) //
+				.build();
+		Request.Builder request = new Request.Builder() //
+				.url(url) //
+				.header("Authorization", Credentials.basic(Settings.INFLUX_USER, Settings.INFLUX_PASSWORD));
+		int offset = lineProtocol.getOffset(fromLine);
+		int rawSize = lineProtocol.getOffset(toLine) - offset;
+		int size;
+		if (InfluxPool.GZIP) {
+			size = lineProtocol.gzip(fromLine, toLine);
+			request.header("Content-Encoding", "gzip") //
+					.post(RequestBody.create(LINE_PROTOCOL, lineProtocol.getCompressed(), 0, size));
+		} else {
+			size = rawSize;
+			request.post(RequestBody.create(LINE_PROTOCOL, lineProtocol.getBuffer(), offset, size));
+		}
+		try (Response response = InfluxPool.getHttpClient().newCall(request.build()).execute()) {
+			if (traffic != null) {
+				traffic.add(rawSize, size);
+			}
+			if (response.code() == HTTP_ENTITY_TOO_LARGE && toLine - fromLine > 1) {
+				// bisect and send both halves on their own
+				int middle = (fromLine + toLine) >>> 1;
+				write(lineProtocol, fromLine, middle, traffic);
+				write(lineProtocol, middle, toLine, traffic);
+				return;
+			}
+			if (!response.isSuccessful()) {
+				throw new Exception(
+						"Unable to write to Influx: " + response.code() + " " + response.body().string().trim());
+			}
 		}
 	}
 
@@ -65,87 +310,263 @@ public class Influx {
 	}
 
 	@FunctionalInterface
+	public static interface QueryResultConsumer {
+		public void accept(QueryResult queryResult) throws Exception;
+	}
+
 	public static interface PointsFunction {
-		public Map<String, Object> apply(Things things, Map<String, Object> input) throws Exception;
+		/**
+		 * Creates the buffer that is passed to {@link #apply}.
+		 *
+		 * @return the FieldBuffer
+		 */
+		public FieldBuffer createBuffer();
+
+		/**
+		 * Converts one row into the given buffer; the buffer is cleared before.
+		 *
+		 * @param input  the input row
+		 * @param output the output buffer
+		 * @throws Exception on error
+		 */
+		public void apply(ChunkData.Row input, FieldBuffer output) throws Exception;
 	}
 
-	public static Map<Long, Map<String, Object>> queryResultToList(QueryResult... queryResults) {
-		Map<Long, Map<String, Object>> result = new HashMap<>();
+	/**
+	 * Parses QueryResults into columns. Rows of different QueryResults with the
+	 * same timestamp are combined; columns that are not part of the dictionary
+	 * are ignored.
+	 *
+	 * <p>
+	 * Influx returns every Series sorted by time, so the Series are joined by a
+	 * k-way merge in one pass: the next row is always the smallest timestamp at
+	 * the head of any Series. Values of later Series overwrite values of earlier
+	 * ones with the same timestamp. A Series that is not sorted is sorted
+	 * before.
+	 *
+	 * @param dictionary   the ChunkData.Dictionary
+	 * @param queryResults the QueryResults
+	 * @return the ChunkData
+	 */
+	public static ChunkData queryResultToList(ChunkData.Dictionary dictionary, QueryResult... queryResults) {
+		List<Series> seriess = new ArrayList<>();
+		int count = 0;
 		for (QueryResult queryResult : queryResults) {
-			for (Result r : queryResult.getResults()) {
-				List<Series> seriess = r.getSeries();
-				if (seriess != null) {
-					for (Series series : seriess) {
-						List<String> columns = series.getColumns();
-						for (List<Object> values : series.getValues()) {
-							Map<String, Object> fields = new HashMap<>();
-							for (int i = 0; i < values.size(); i++) {
-								Object value = values.get(i);
-								if (value != null) {
-									fields.put(columns.get(i), value);
-								}
-							}
-
-							Long timestamp = Long.valueOf((long) ((Double) values.get(0)).doubleValue());
-							Map<String, Object> existingFields = result.get(timestamp);
-							if (existingFields == null) {
-								result.put(timestamp, fields);
-							} else {
-								existingFields.putAll(fields);
-							}
-						}
+			for (Series series : getSeries(queryResult)) {
+				seriess.add(series);
+				count += series.getValues().size();
+			}
+		}
+		int k = seriess.size();
+
+		// parse the timestamps of every Series once
+		long[][] seriesTimestamps = new long[k][];
+		int[][] order = new int[k][];
+		for (int s = 0; s < k; s++) {
+			seriesTimestamps[s] = getTimestamps(seriess.get(s));
+			order[s] = getOrder(seriesTimestamps[s]);
+		}
+
+		// merge; 'rows' maps every row of every Series to its row in the result
+		long[] timestamps = new long[count];
+		int[][] rows = new int[k][];
+		int[] heads = new int[k];
+		for (int s = 0; s < k; s++) {
+			rows[s] = new int[seriesTimestamps[s].length];
+		}
+		int n = 0;
+		while (true) {
+			long next = Long.MAX_VALUE;
+			boolean found = false;
+			for (int s = 0; s < k; s++) {
+				if (heads[s] < rows[s].length) {
+					long timestamp = seriesTimestamps[s][position(order[s], heads[s])];
+					if (!found || timestamp < next) {
+						next = timestamp;
+						found = true;
+					}
+				}
+			}
+			if (!found) {
+				break;
+			}
+			for (int s = 0; s < k; s++) {
+				while (heads[s] < rows[s].length) {
+					int position = position(order[s], heads[s]);
+					if (seriesTimestamps[s][position] != next) {
+						break;
+					}
+					rows[s][position] = n;
+					heads[s]++;
+				}
+			}
+			timestamps[n++] = next;
+		}
+		if (n < count) {
+			timestamps = Arrays.copyOf(timestamps, n);
+		}
+		ChunkData result = new ChunkData(dictionary, timestamps);
+
+		// fill the columns; Series by Series to keep later values
+		for (int s = 0; s < k; s++) {
+			Series series = seriess.get(s);
+			List<String> columns = series.getColumns();
+			int[] indexes = new int[columns.size()];
+			for (int i = 0; i < indexes.length; i++) {
+				indexes[i] = dictionary.indexOf(columns.get(i));
+			}
+			int position = 0;
+			for (List<Object> values : series.getValues()) {
+				int row = rows[s][position++];
+				for (int i = 1; i < values.size(); i++) {
+					Object value = values.get(i);
+					if (value == null || indexes[i] < 0) {
+						continue;
+					}
+					if (!(value instanceof Number)) {
+						throw new IllegalArgumentException("Unable to cast value " + value);
 					}
+					result.set(indexes[i], row, ((Number) value).doubleValue());
 				}
 			}
 		}
 		return result;
 	}
 
-	public static BatchPoints createBatchPoints(int femsId, Things things, Map<Long, Map<String, Object>> data,
-			PointsFunction function) throws Exception {
-		// count number of points
-		int noOfPoints = 0;
-
-		// initialize BatchPoints
-		BatchPoints batchPoints = BatchPoints.database(Settings.INFLUX_DATABASE) //
-				.tag("fems", String.valueOf(femsId)) //
-				.build();
+	private static long[] getTimestamps(Series series) {
+		List<List<Object>> values = series.getValues();
+		long[] result = new long[values.size()];
+		int i = 0;
+		for (List<Object> row : values) {
+			result[i++] = toTimestamp(row.get(0));
+		}
+		return result;
+	}
 
-		// parse QueryResult
-		for (Entry<Long, Map<String, Object>> entry : data.entrySet()) {
-			long timestamp = entry.getKey();
-			// use helper method to create Points that should be written to database
-			Point point = createPoint(things, timestamp, entry.getValue(), function);
-			if (point != null) {
-				noOfPoints++;
-				batchPoints.point(point);
+	/**
+	 * Gets the positions of the timestamps in ascending order; equal timestamps
+	 * keep their order.
+	 *
+	 * @param timestamps the timestamps
+	 * @return the positions; null if the timestamps are already in order
+	 */
+	private static int[] getOrder(long[] timestamps) {
+		boolean ordered = true;
+		for (int i = 1; i < timestamps.length; i++) {
+			if (timestamps[i] < timestamps[i - 1]) {
+				ordered = false;
+				break;
 			}
 		}
+		if (ordered) {
+			return null;
+		}
+		return IntStream.range(0, timestamps.length).boxed() //
+				.sorted(Comparator.comparingLong(i -> timestamps[i])) //
+				.mapToInt(Integer::intValue) //
+				.toArray();
+	}
 
-		// info output
-		System.out.println("  Number of Points: " + noOfPoints);
+	private static int position(int[] order, int head) {
+		return order == null ? head : order[head];
+	}
 
-		// No Points? return null
-		if (noOfPoints == 0) {
-			return null;
+	/**
+	 * Gets the number of rows of all Series.
+	 *
+	 * @param queryResult the QueryResult
+	 * @return the number of rows
+	 */
+	public static int getRowCount(QueryResult queryResult) {
+		int result = 0;
+		for (Series series : getSeries(queryResult)) {
+			result += series.getValues().size();
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the first and the last timestamp of the QueryResult without parsing
+	 * all rows; every Series is sorted by time.
+	 *
+	 * @param queryResult the QueryResult
+	 * @return the first and the last timestamp in milliseconds; null if there
+	 *         are no rows
+	 */
+	public static long[] getTimeRange(QueryResult queryResult) {
+		long[] result = null;
+		for (Series series : getSeries(queryResult)) {
+			List<List<Object>> values = series.getValues();
+			if (values.isEmpty()) {
+				continue;
+			}
+			long first = toTimestamp(values.get(0).get(0));
+			long last = toTimestamp(values.get(values.size() - 1).get(0));
+			if (result == null) {
+				result = new long[] { first, last };
+			} else {
+				result[0] = Math.min(result[0], first);
+				result[1] = Math.max(result[1], last);
+			}
 		}
+		return result;
+	}
 
-		return batchPoints;
+	private static List<Series> getSeries(QueryResult queryResult) {
+		List<Series> result = new ArrayList<>();
+		for (Result r : queryResult.getResults()) {
+			List<Series> seriess = r.getSeries();
+			if (seriess != null) {
+				result.addAll(seriess);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Converts the 'time' column to epoch milliseconds. Regular queries return it
+	 * as a number, chunked queries as an RFC3339 string.
+	 * 
+	 * @param time the value of the 'time' column
+	 * @return the timestamp in milliseconds
+	 */
+	public static long toTimestamp(Object time) {
+		if (time instanceof Double) {
+			return (long) ((Double) time).doubleValue();
+		}
+		return Instant.parse((String) time).toEpochMilli();
 	}
 
-	private static Point createPoint(Things things, long timestamp, Map<String, Object> input, PointsFunction function)
+	/**
+	 * Converts all rows of the ChunkData and encodes the resulting Points as line
+	 * protocol with the coarsest timestamp precision that fits the data. Points
+	 * are encoded in ascending timestamp order, as Influx appends them to its
+	 * cache fastest.
+	 *
+	 * @param femsId   the FEMS-ID
+	 * @param data     the ChunkData
+	 * @param function the PointsFunction
+	 * @param output   the LineProtocol; is cleared before
+	 * @return the number of Points
+	 * @throws Exception on error
+	 */
+	public static int encode(int femsId, ChunkData data, PointsFunction function, LineProtocol output)
 			throws Exception {
-		Settings settings = new Settings();
+		output.start(new Settings().INFLUX_TARGET_MEASUREMENT, "fems", String.valueOf(femsId),
+				LineProtocol.getPrecision(data));
 
-		// run function
-		Map<String, Object> output = function.apply(things, input);
-		// stop on empty output
-		if (output.isEmpty()) {
-			return null;
+		// parse rows; the buffer is reused for every row
+		FieldBuffer fields = function.createBuffer();
+		ChunkData.Row row = data.row();
+		for (int i = 0; i < data.size(); i++) {
+			row.setRow(i);
+			fields.clear();
+			function.apply(row, fields);
+			// stop on empty output
+			if (!fields.isEmpty()) {
+				output.add(fields, row.getTimestamp());
+			}
 		}
-		// create point
-		Builder point = Point.measurement(settings.INFLUX_TARGET_MEASUREMENT).time(timestamp, TimeUnit.MILLISECONDS)
-				.fields(output);
-		return point.build();
+		return output.getLines();
 	}
 }
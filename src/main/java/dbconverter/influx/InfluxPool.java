@@ -0,0 +1,188 @@
+package dbconverter.influx;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+import org.influxdb.InfluxDB;
+import org.influxdb.InfluxDBFactory;
+
+import dbconverter.Settings;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * Holds the long-lived InfluxDB client that is shared by all queries and
+ * writes.
+ *
+ * <p>
+ * The client is created lazily on first use and keeps its HTTP connections
+ * alive between calls, so a run pays the TCP/TLS handshake once per pooled
+ * connection instead of once per query. {@link #close()} has to be called at
+ * the end of the run.
+ *
+ * <p>
+ * Query responses are requested gzip-compressed and decompressed transparently
+ * by OkHttp; {@link #GZIP} additionally compresses written Points. The bytes
+ * of responses to queries that are registered via
+ * {@link #track(String, Traffic)} are counted before and after decompression.
+ */
+public class InfluxPool {
+
+	/**
+	 * Maximum number of idle HTTP connections to keep and maximum number of
+	 * concurrent requests to the Influx host.
+	 */
+	public static int POOL_SIZE = 5;
+
+	/**
+	 * How long an idle HTTP connection is kept alive.
+	 */
+	public static int KEEP_ALIVE_SECONDS = 300;
+
+	/**
+	 * Compress written Points with gzip.
+	 */
+	public static boolean GZIP = false;
+
+	private static InfluxDB influxDB = null;
+	private static OkHttpClient httpClient = null;
+	private static Dispatcher dispatcher = null;
+	private static ConnectionPool connectionPool = null;
+	// Traffic counters by query string
+	private final static Map<String, Traffic> TRAFFIC = new ConcurrentHashMap<>();
+
+	private InfluxPool() {
+	}
+
+	/**
+	 * Gets the shared InfluxDB client; creates it on first call.
+	 *
+	 * @return the InfluxDB client
+	 */
+	public static synchronized InfluxDB get() {
+		init();
+		return influxDB;
+	}
+
+	/**
+	 * Gets an HTTP client that shares connections and request limits with the
+	 * InfluxDB client; used for requests that the InfluxDB client does not
+	 * support.
+	 *
+	 * @return the OkHttpClient
+	 */
+	public static synchronized OkHttpClient getHttpClient() {
+		init();
+		return httpClient;
+	}
+
+	private static void init() {
+		if (influxDB == null) {
+			dispatcher = new Dispatcher();
+			dispatcher.setMaxRequests(Math.max(POOL_SIZE, 1));
+			dispatcher.setMaxRequestsPerHost(Math.max(POOL_SIZE, 1));
+			connectionPool = new ConnectionPool(POOL_SIZE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+			OkHttpClient.Builder client = new OkHttpClient.Builder() //
+					.connectionPool(connectionPool) //
+					.dispatcher(dispatcher) //
+					.addInterceptor(InfluxPool::countRaw) //
+					.addNetworkInterceptor(InfluxPool::countCompressed);
+			// build before InfluxDBFactory adds its interceptors to the builder
+			httpClient = client.build();
+			influxDB = InfluxDBFactory.connect(Settings.INFLUX_URL, Settings.INFLUX_USER, Settings.INFLUX_PASSWORD,
+					client);
+		}
+	}
+
+	/**
+	 * Counts the response bytes of the query in the given Traffic until
+	 * {@link #untrack(String)} is called.
+	 *
+	 * @param query   the query string
+	 * @param traffic the Traffic
+	 */
+	public static void track(String query, Traffic traffic) {
+		TRAFFIC.put(query, traffic);
+	}
+
+	public static void untrack(String query) {
+		TRAFFIC.remove(query);
+	}
+
+	/**
+	 * Counts the response bytes after decompression. The Accept-Encoding is left
+	 * to OkHttp, which decompresses transparently only if the header is not set
+	 * by the application.
+	 */
+	private static Response countRaw(Interceptor.Chain chain) throws IOException {
+		Response response = chain.proceed(chain.request());
+		Traffic traffic = getTraffic(response);
+		if (traffic == null) {
+			return response;
+		}
+		return count(response, traffic::addRaw);
+	}
+
+	/**
+	 * Counts the response bytes as they are received.
+	 */
+	private static Response countCompressed(Interceptor.Chain chain) throws IOException {
+		Response response = chain.proceed(chain.request());
+		Traffic traffic = getTraffic(response);
+		if (traffic == null) {
+			return response;
+		}
+		return count(response, traffic::addCompressed);
+	}
+
+	private static Traffic getTraffic(Response response) {
+		String query = response.request().url().queryParameter("q");
+		if (query == null || response.body() == null) {
+			return null;
+		}
+		return TRAFFIC.get(query);
+	}
+
+	private static Response count(Response response, LongConsumer counter) {
+		ResponseBody body = response.body();
+		ForwardingSource source = new ForwardingSource(body.source()) {
+			@Override
+			public long read(Buffer sink, long byteCount) throws IOException {
+				long read = super.read(sink, byteCount);
+				if (read > 0) {
+					counter.accept(read);
+				}
+				return read;
+			}
+		};
+		return response.newBuilder() //
+				.body(ResponseBody.create(body.contentType(), body.contentLength(), Okio.buffer(source))) //
+				.build();
+	}
+
+	/**
+	 * Closes the shared InfluxDB client and releases its connections.
+	 */
+	public static synchronized void close() {
+		if (influxDB != null) {
+			influxDB.close();
+			influxDB = null;
+			httpClient = null;
+			// threads of streaming queries would otherwise keep the JVM alive
+			dispatcher.executorService().shutdown();
+			connectionPool.evictAll();
+			dispatcher = null;
+			connectionPool = null;
+		}
+	}
+}
@@ -0,0 +1,346 @@
+package dbconverter.influx;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Encodes Points in InfluxDB line protocol straight into a byte buffer.
+ *
+ * <pre>
+ * measurement,tag=value field1=1i,field2=2i timestamp
+ * </pre>
+ *
+ * <p>
+ * The buffer grows as needed and is kept by {@link #clear()}, so a
+ * LineProtocol can be reused for any number of batches. Measurement, tags and
+ * field keys are escaped once per batch respectively per FieldBuffer; field
+ * values are written as integers with 'i' suffix. The end of every line is
+ * recorded, so a range of lines can be sent on its own. {@link #gzip} compresses
+ * a range of lines into a second reusable buffer; {@link #close()} releases the
+ * native memory of the compressor.
+ */
+public class LineProtocol implements AutoCloseable {
+
+	/**
+	 * Supported timestamp precisions, coarsest first.
+	 */
+	private final static TimeUnit[] PRECISIONS = new TimeUnit[] { TimeUnit.HOURS, TimeUnit.MINUTES,
+			TimeUnit.SECONDS, TimeUnit.MILLISECONDS };
+
+	private byte[] buffer = new byte[64 * 1024];
+	private int size = 0;
+	private int lines = 0;
+	// offset after the end of every line
+	private int[] ends = new int[1024];
+	private byte[] prefix = new byte[0];
+	private TimeUnit precision = TimeUnit.MILLISECONDS;
+
+	// gzip output; the Deflater is created on first use
+	private byte[] compressed = new byte[0];
+	private int compressedSize = 0;
+	private Deflater deflater = null;
+	private final CRC32 crc = new CRC32();
+
+	// field keys of the last FieldBuffer, escaped and sorted by key
+	private FieldBuffer fields = null;
+	private byte[][] keys = null;
+	private int[] order = null;
+
+	/**
+	 * Gets the coarsest precision that represents all given timestamps exactly.
+	 *
+	 * @param data the ChunkData
+	 * @return the precision
+	 */
+	public static TimeUnit getPrecision(ChunkData data) {
+		for (TimeUnit precision : PRECISIONS) {
+			long divisor = precision.toMillis(1);
+			boolean exact = true;
+			for (int i = 0; i < data.size(); i++) {
+				if (data.getTimestamp(i) % divisor != 0) {
+					exact = false;
+					break;
+				}
+			}
+			if (exact) {
+				return precision;
+			}
+		}
+		return TimeUnit.MILLISECONDS;
+	}
+
+	/**
+	 * Gets the value of the 'precision' parameter of the write endpoint.
+	 *
+	 * @param precision the precision
+	 * @return the parameter value
+	 */
+	public static String toParameter(TimeUnit precision) {
+		switch (precision) {
+		case HOURS:
+			return "h";
+		case MINUTES:
+			return "m";
+		case SECONDS:
+			return "s";
+		case MILLISECONDS:
+			return "ms";
+		default:
+			throw new IllegalArgumentException("Unsupported precision: " + precision);
+		}
+	}
+
+	/**
+	 * Empties the buffer and sets measurement, tag and precision for the
+	 * following lines.
+	 *
+	 * @param measurement the measurement
+	 * @param tagKey      the tag key
+	 * @param tagValue    the tag value
+	 * @param precision   the timestamp precision; see {@link #getPrecision}
+	 */
+	public void start(String measurement, String tagKey, String tagValue, TimeUnit precision) {
+		this.clear();
+		this.precision = precision;
+		StringBuilder prefix = new StringBuilder();
+		escape(prefix, measurement, false);
+		prefix.append(',');
+		escape(prefix, tagKey, true);
+		prefix.append('=');
+		escape(prefix, tagValue, true);
+		prefix.append(' ');
+		this.prefix = prefix.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Adds a line with all values that are set in the FieldBuffer.
+	 *
+	 * @param fields          the fields; at least one must be set
+	 * @param timestampMillis the timestamp
+	 */
+	public void add(FieldBuffer fields, long timestampMillis) {
+		if (this.fields != fields) {
+			this.setFields(fields);
+		}
+		this.write(this.prefix);
+		boolean first = true;
+		for (int slot : this.order) {
+			if (!fields.isSet(slot)) {
+				continue;
+			}
+			if (!first) {
+				this.write((byte) ',');
+			}
+			first = false;
+			this.write(this.keys[slot]);
+			this.write((byte) '=');
+			this.write(fields.get(slot));
+			this.write((byte) 'i');
+		}
+		this.write((byte) ' ');
+		this.write(timestampMillis / this.precision.toMillis(1));
+		this.write((byte) '\n');
+		if (this.lines == this.ends.length) {
+			this.ends = Arrays.copyOf(this.ends, this.ends.length * 2);
+		}
+		this.ends[this.lines++] = this.size;
+	}
+
+	public void clear() {
+		this.size = 0;
+		this.lines = 0;
+	}
+
+	public byte[] getBuffer() {
+		return this.buffer;
+	}
+
+	/**
+	 * Gets the number of valid bytes in {@link #getBuffer()}.
+	 *
+	 * @return the size
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Gets the offset of the start of the line in {@link #getBuffer()}.
+	 *
+	 * @param line the line; {@link #getLines()} for the end of the last line
+	 * @return the offset
+	 */
+	public int getOffset(int line) {
+		if (line == 0) {
+			return 0;
+		}
+		return this.ends[line - 1];
+	}
+
+	/**
+	 * Compresses a range of lines in gzip format.
+	 *
+	 * @param fromLine the first line
+	 * @param toLine   the line after the last line
+	 * @return the number of valid bytes in {@link #getCompressed()}
+	 */
+	public int gzip(int fromLine, int toLine) {
+		int offset = this.getOffset(fromLine);
+		int length = this.getOffset(toLine) - offset;
+		if (this.deflater == null) {
+			// 'nowrap': header and trailer are written here
+			this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		}
+		this.deflater.reset();
+		this.crc.reset();
+		this.crc.update(this.buffer, offset, length);
+		if (this.compressed.length < length / 2 + 64) {
+			this.compressed = new byte[length / 2 + 64];
+		}
+
+		// header: magic number, method 'deflate', no flags, no time, unknown OS
+		byte[] header = new byte[] { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+		System.arraycopy(header, 0, this.compressed, 0, header.length);
+		int n = header.length;
+
+		this.deflater.setInput(this.buffer, offset, length);
+		this.deflater.finish();
+		while (!this.deflater.finished()) {
+			if (n == this.compressed.length) {
+				this.compressed = Arrays.copyOf(this.compressed, this.compressed.length * 2);
+			}
+			n += this.deflater.deflate(this.compressed, n, this.compressed.length - n);
+		}
+
+		// trailer: CRC-32 and uncompressed size, little endian
+		if (n + 8 > this.compressed.length) {
+			this.compressed = Arrays.copyOf(this.compressed, n + 8);
+		}
+		n = writeInt(this.compressed, n, (int) this.crc.getValue());
+		n = writeInt(this.compressed, n, length);
+		this.compressedSize = n;
+		return n;
+	}
+
+	/**
+	 * Gets the buffer that was filled by the last call to {@link #gzip}.
+	 *
+	 * @return the buffer
+	 */
+	public byte[] getCompressed() {
+		return this.compressed;
+	}
+
+	public int compressedSize() {
+		return this.compressedSize;
+	}
+
+	/**
+	 * Releases the Deflater. The LineProtocol stays usable; {@link #gzip} creates
+	 * a new one if needed.
+	 */
+	@Override
+	public void close() {
+		if (this.deflater != null) {
+			this.deflater.end();
+			this.deflater = null;
+		}
+	}
+
+	public int getLines() {
+		return this.lines;
+	}
+
+	public TimeUnit getPrecision() {
+		return this.precision;
+	}
+
+	@Override
+	public String toString() {
+		return new String(this.buffer, 0, this.size, StandardCharsets.UTF_8);
+	}
+
+	private void setFields(FieldBuffer fields) {
+		this.fields = fields;
+		this.keys = new byte[fields.size()][];
+		for (int i = 0; i < fields.size(); i++) {
+			StringBuilder key = new StringBuilder();
+			escape(key, fields.getChannel(i), true);
+			this.keys[i] = key.toString().getBytes(StandardCharsets.UTF_8);
+		}
+		this.order = IntStream.range(0, fields.size()).boxed() //
+				.sorted(Comparator.comparing(fields::getChannel)) //
+				.mapToInt(Integer::intValue) //
+				.toArray();
+	}
+
+	/**
+	 * Escapes commas and spaces - and for keys and tag values also equal signs -
+	 * with a backslash.
+	 */
+	private static void escape(StringBuilder target, String value, boolean escapeEquals) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == ',' || c == ' ' || (escapeEquals && c == '=')) {
+				target.append('\\');
+			}
+			target.append(c);
+		}
+	}
+
+	private static int writeInt(byte[] target, int offset, int value) {
+		for (int i = 0; i < 4; i++) {
+			target[offset++] = (byte) (value >>> (i * 8));
+		}
+		return offset;
+	}
+
+	private void ensureCapacity(int additional) {
+		if (this.size + additional > this.buffer.length) {
+			this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.size + additional));
+		}
+	}
+
+	private void write(byte b) {
+		this.ensureCapacity(1);
+		this.buffer[this.size++] = b;
+	}
+
+	private void write(byte[] bytes) {
+		this.ensureCapacity(bytes.length);
+		System.arraycopy(bytes, 0, this.buffer, this.size, bytes.length);
+		this.size += bytes.length;
+	}
+
+	/**
+	 * Writes the decimal digits of the value without creating a String.
+	 */
+	private void write(long value) {
+		// Long.MIN_VALUE has 20 characters
+		this.ensureCapacity(20);
+		if (value == Long.MIN_VALUE) {
+			this.write("-9223372036854775808".getBytes(StandardCharsets.US_ASCII));
+			return;
+		}
+		if (value < 0) {
+			this.buffer[this.size++] = '-';
+			value = -value;
+		}
+		int start = this.size;
+		do {
+			this.buffer[this.size++] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value != 0);
+		// digits were written in reverse order
+		for (int i = start, j = this.size - 1; i < j; i++, j--) {
+			byte b = this.buffer[i];
+			this.buffer[i] = this.buffer[j];
+			this.buffer[j] = b;
+		}
+	}
+}
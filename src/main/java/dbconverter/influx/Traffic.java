@@ -0,0 +1,50 @@
+package dbconverter.influx;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the bytes of HTTP bodies before and after compression.
+ *
+ * <p>
+ * 'Raw' is the size of the body as it is produced respectively consumed by
+ * this application, 'compressed' the size on the wire. Without compression
+ * both are equal.
+ */
+public class Traffic {
+
+	private final AtomicLong raw = new AtomicLong(0);
+	private final AtomicLong compressed = new AtomicLong(0);
+
+	public void add(long raw, long compressed) {
+		this.raw.addAndGet(raw);
+		this.compressed.addAndGet(compressed);
+	}
+
+	public void addRaw(long raw) {
+		this.raw.addAndGet(raw);
+	}
+
+	public void addCompressed(long compressed) {
+		this.compressed.addAndGet(compressed);
+	}
+
+	public long getRaw() {
+		return this.raw.get();
+	}
+
+	public long getCompressed() {
+		return this.compressed.get();
+	}
+
+	@Override
+	public String toString() {
+		long raw = this.getRaw();
+		long compressed = this.getCompressed();
+		StringBuilder result = new StringBuilder();
+		result.append(String.format("%.1f kB raw, %.1f kB compressed", raw / 1024., compressed / 1024.));
+		if (raw > 0) {
+			result.append(" (").append(100 - compressed * 100 / raw).append("% saved)");
+		}
+		return result.toString();
+	}
+}
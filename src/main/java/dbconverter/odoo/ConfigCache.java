@@ -0,0 +1,212 @@
+package dbconverter.odoo;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.gson.JsonObject;
+
+import dbconverter.EdgeConfig;
+import dbconverter.JsonUtils;
+import dbconverter.OpenemsError.OpenemsNamedException;
+import dbconverter.Utils;
+
+/**
+ * Caches the 'openems_config' of every FEMS on disk, so that Odoo is asked at
+ * most once per {@link #TTL_HOURS}.
+ *
+ * <p>
+ * Every FEMS has its own file with the raw config as it came from Odoo and the
+ * SHA-256 of it. A config that is older than the TTL is fetched again; if its
+ * hash did not change, only the fetch time is updated and the already parsed
+ * {@link EdgeConfig} is kept. If Odoo is not reachable, an outdated config is
+ * used instead. With '-OFFLINE_CONFIG=true' Odoo is never asked.
+ */
+public class ConfigCache {
+
+	/**
+	 * Directory of the cache files.
+	 */
+	public static String DIRECTORY = "cache/configs";
+
+	/**
+	 * Age in hours after which a config is fetched again.
+	 */
+	public static int TTL_HOURS = 24;
+
+	/**
+	 * Use only cached configs; fail for FEMS without one.
+	 */
+	public static boolean OFFLINE = false;
+
+	@FunctionalInterface
+	public static interface Fetcher {
+		/**
+		 * Fetches the raw config from Odoo.
+		 *
+		 * @return the config as JSON string
+		 * @throws Exception on error
+		 */
+		public String fetch() throws Exception;
+	}
+
+	private static class Entry {
+		private final String hash;
+		private final EdgeConfig config;
+
+		private Entry(String hash, EdgeConfig config) {
+			this.hash = hash;
+			this.config = config;
+		}
+	}
+
+	// parsed configs by FEMS-ID
+	private final static Map<Integer, Entry> PARSED = new HashMap<>();
+
+	private ConfigCache() {
+	}
+
+	/**
+	 * Gets the config of the FEMS; from the cache if it is fresh enough.
+	 *
+	 * @param femsId  the FEMS-ID
+	 * @param fetcher fetches the config from Odoo
+	 * @return the config
+	 * @throws Exception on error
+	 */
+	public static EdgeConfig get(int femsId, Fetcher fetcher) throws Exception {
+		JsonObject cached = load(femsId);
+		if (cached != null) {
+			if (isFresh(cached)) {
+				return parse(femsId, JsonUtils.getAsString(cached, "hash"), JsonUtils.getAsString(cached, "config"));
+			}
+		} else if (OFFLINE) {
+			throw new Exception("No cached config for FEMS " + femsId + " in offline mode");
+		}
+
+		String config;
+		try {
+			config = fetcher.fetch();
+		} catch (Exception e) {
+			if (cached == null) {
+				throw e;
+			}
+			System.out.println(femsId + ": Using outdated config: " + e.getMessage());
+			return parse(femsId, JsonUtils.getAsString(cached, "hash"), JsonUtils.getAsString(cached, "config"));
+		}
+		if (cached != null && !JsonUtils.getAsString(cached, "hash").equals(hash(config))) {
+			System.out.println(femsId + ": Config changed in Odoo");
+		}
+		return put(femsId, config);
+	}
+
+	/**
+	 * Gets the config of the FEMS if it is cached and fresh enough.
+	 *
+	 * @param femsId the FEMS-ID
+	 * @return the config; null if it needs to be fetched
+	 * @throws Exception on error
+	 */
+	public static EdgeConfig getIfFresh(int femsId) throws Exception {
+		JsonObject cached = load(femsId);
+		if (cached == null || !isFresh(cached)) {
+			return null;
+		}
+		return parse(femsId, JsonUtils.getAsString(cached, "hash"), JsonUtils.getAsString(cached, "config"));
+	}
+
+	/**
+	 * Stores a config that was fetched from Odoo.
+	 *
+	 * @param femsId the FEMS-ID
+	 * @param config the config as JSON string
+	 * @return the parsed config
+	 * @throws Exception on error
+	 */
+	public static EdgeConfig put(int femsId, String config) throws Exception {
+		String hash = hash(config);
+		EdgeConfig result = parse(femsId, hash, config);
+		JsonObject json = JsonUtils.buildJsonObject() //
+				.addProperty("femsId", femsId) //
+				.addProperty("fetched", System.currentTimeMillis()) //
+				.addProperty("hash", hash) //
+				.addProperty("config", config) //
+				.build();
+		try {
+			Utils.writeAtomically(getPath(femsId), json.toString());
+		} catch (IOException e) {
+			System.out.println(femsId + ": Unable to save config: " + e.getMessage());
+		}
+		return result;
+	}
+
+	/**
+	 * Parses the config unless it was already parsed with the same hash. The
+	 * conversion needs only the Components and the Natures of their Factories,
+	 * so properties are skipped.
+	 */
+	private static EdgeConfig parse(int femsId, String hash, String config) throws Exception {
+		synchronized (PARSED) {
+			Entry entry = PARSED.get(femsId);
+			if (entry != null && entry.hash.equals(hash)) {
+				return entry.config;
+			}
+		}
+		EdgeConfig result = EdgeConfig.parse(config, EdgeConfig.Content.COMPONENTS_AND_FACTORIES);
+		synchronized (PARSED) {
+			PARSED.put(femsId, new Entry(hash, result));
+		}
+		return result;
+	}
+
+	/**
+	 * Loads the cache file of the FEMS; a file that can not be read counts as a
+	 * cache miss.
+	 */
+	private static JsonObject load(int femsId) {
+		Path path = getPath(femsId);
+		if (!Files.exists(path)) {
+			return null;
+		}
+		try {
+			JsonObject result = JsonUtils
+					.parseToJsonObject(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+			if (JsonUtils.getAsInt(result, "femsId") != femsId) {
+				return null;
+			}
+			// all members that are used later
+			JsonUtils.getAsLong(result, "fetched");
+			JsonUtils.getAsString(result, "hash");
+			JsonUtils.getAsString(result, "config");
+			return result;
+		} catch (IOException | OpenemsNamedException e) {
+			System.out.println(femsId + ": Unable to load cached config: " + e.getMessage());
+			return null;
+		}
+	}
+
+	private static boolean isFresh(JsonObject cached) throws Exception {
+		long age = System.currentTimeMillis() - JsonUtils.getAsLong(cached, "fetched");
+		return OFFLINE || age < TTL_HOURS * 3_600_000L;
+	}
+
+	private static Path getPath(int femsId) {
+		return Paths.get(DIRECTORY, femsId + ".json");
+	}
+
+	private static String hash(String config) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(config.getBytes(StandardCharsets.UTF_8));
+			return String.format("%064x", new BigInteger(1, digest));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -3,12 +3,19 @@ package dbconverter.odoo;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.xmlrpc.XmlRpcException;
-import org.apache.xmlrpc.client.XmlRpcClient;
-import org.apache.xmlrpc.client.XmlRpcClientConfigImpl;
 
 import dbconverter.EdgeConfig;
 import dbconverter.JsonUtils;
@@ -27,17 +34,153 @@ public class Odoo {
 	public final static DateTimeFormatter DATETIME_FORMATTER = DateTimeFormatter
 			.ofPattern(DEFAULT_SERVER_DATETIME_FORMAT);
 
+	/**
+	 * Maximum number of records per 'search_read'.
+	 */
+	public static int PAGE_SIZE = 100;
+
+	private final static Pattern FEMS_NAME = Pattern.compile("^fems(\\d+)$");
+
 	private static Object executeKw(String url, Object[] params) throws XmlRpcException, MalformedURLException {
-		final XmlRpcClient client = new XmlRpcClient();
-		XmlRpcClientConfigImpl config = new XmlRpcClientConfigImpl();
-		config.setEnabledForExtensions(true);
-		config.setServerURL(new URL(String.format("%s/xmlrpc/2/object", url)));
-		config.setReplyTimeout(5000);
-		client.setConfig(config);
-		return client.execute("execute_kw", params);
+		return OdooPool.execute(url, params);
 	}
 
+	/**
+	 * Gets the config of the FEMS; from the {@link ConfigCache} if possible.
+	 *
+	 * @param femsId the FEMS-ID
+	 * @return the config
+	 * @throws Exception on error
+	 */
 	public static EdgeConfig getConfig(int femsId) throws Exception {
+		return ConfigCache.get(femsId, () -> fetchConfig(femsId));
+	}
+
+	/**
+	 * Gets the config of the FEMS asynchronously on the {@link OdooPool}.
+	 *
+	 * @param femsId the FEMS-ID
+	 * @return the future config
+	 */
+	public static CompletableFuture<EdgeConfig> getConfigAsync(int femsId) {
+		CompletableFuture<EdgeConfig> result = new CompletableFuture<>();
+		OdooPool.getExecutor().execute(() -> {
+			try {
+				result.complete(getConfig(femsId));
+			} catch (Exception e) {
+				result.completeExceptionally(e);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Prefetches the configs of many FEMS asynchronously: first all at once via
+	 * {@link #getConfigs(int[])}, then the remaining ones one by one.
+	 *
+	 * @param femsIds the FEMS-IDs
+	 * @return the future configs by FEMS-ID
+	 */
+	public static Map<Integer, CompletableFuture<EdgeConfig>> getConfigsAsync(int[] femsIds) {
+		CompletableFuture<Map<Integer, EdgeConfig>> batch = new CompletableFuture<>();
+		OdooPool.getExecutor().execute(() -> {
+			try {
+				batch.complete(getConfigs(femsIds));
+			} catch (Exception e) {
+				batch.completeExceptionally(e);
+			}
+		});
+		Map<Integer, CompletableFuture<EdgeConfig>> result = new LinkedHashMap<>();
+		for (int femsId : femsIds) {
+			result.put(femsId, batch.handle((configs, e) -> configs == null ? null : configs.get(femsId))
+					.thenCompose(config -> config != null ? CompletableFuture.completedFuture(config)
+							: getConfigAsync(femsId)));
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the configs of many FEMS; the ones that are not in the
+	 * {@link ConfigCache} are fetched with one paged 'search_read'.
+	 *
+	 * <p>
+	 * FEMS whose config can not be fetched are left out; {@link #getConfig(int)}
+	 * tries them again one by one.
+	 *
+	 * @param femsIds the FEMS-IDs
+	 * @return the configs by FEMS-ID
+	 * @throws Exception on error
+	 */
+	public static Map<Integer, EdgeConfig> getConfigs(int[] femsIds) throws Exception {
+		Map<Integer, EdgeConfig> result = new TreeMap<>();
+		List<String> names = new ArrayList<>();
+		for (int femsId : femsIds) {
+			EdgeConfig config = ConfigCache.getIfFresh(femsId);
+			if (config != null) {
+				result.put(femsId, config);
+			} else {
+				names.add("fems" + femsId);
+			}
+		}
+		if (!names.isEmpty() && !ConfigCache.OFFLINE) {
+			try {
+				result.putAll(getConfigs(new Domain(Field.FemsDevice.NAME.n(), "in", names.toArray())));
+			} catch (Exception e) {
+				System.out.println("Unable to fetch configs: " + e.getMessage());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the configs of all FEMS that match the domains from Odoo and stores
+	 * them in the {@link ConfigCache}. The configs are fetched in pages of
+	 * {@link #PAGE_SIZE} records and parsed in parallel.
+	 *
+	 * @param domains filter domains
+	 * @return the configs by FEMS-ID
+	 * @throws Exception on error
+	 */
+	public static Map<Integer, EdgeConfig> getConfigs(Domain... domains) throws Exception {
+		if (ConfigCache.OFFLINE) {
+			throw new Exception("Unable to search Odoo in offline mode");
+		}
+		int pageSize = Math.max(PAGE_SIZE, 1);
+		List<Map<String, Object>> records = new ArrayList<>();
+		for (int offset = 0;; offset += pageSize) {
+			Map<String, Object>[] page = Odoo.searchRead(Settings.ODOO_URL, Settings.ODOO_DATABASE, 1,
+					Settings.ODOO_PASSWORD, Settings.ODOO_FEMS_MODEL,
+					new Field[] { Field.FemsDevice.NAME, Field.FemsDevice.OPENEMS_CONFIG }, offset, pageSize,
+					domains);
+			records.addAll(Arrays.asList(page));
+			if (page.length < pageSize) {
+				break;
+			}
+		}
+
+		Map<Integer, EdgeConfig> result = new ConcurrentHashMap<>();
+		records.parallelStream().forEach(record -> {
+			String name = getAsString(record.get(Field.FemsDevice.NAME.n()));
+			Matcher m = FEMS_NAME.matcher(name);
+			if (!m.matches()) {
+				return;
+			}
+			int femsId = Integer.parseInt(m.group(1));
+			String config = getAsString(record.get(Field.FemsDevice.OPENEMS_CONFIG.n()));
+			if (config.isEmpty()) {
+				System.out.println(femsId + ": No config in Odoo");
+				return;
+			}
+			try {
+				result.put(femsId, ConfigCache.put(femsId, config));
+			} catch (Exception e) {
+				System.out.println(femsId + ": Unable to parse config: " + e.getMessage());
+			}
+		});
+		return new TreeMap<>(result);
+	}
+
+	private static String fetchConfig(int femsId) throws Exception {
 		int[] recordIds = Odoo.search(Settings.ODOO_URL, Settings.ODOO_DATABASE, 1, Settings.ODOO_PASSWORD,
 				Settings.ODOO_FEMS_MODEL, //
 				new Domain[] { new Domain(Field.FemsDevice.NAME.n(), "=", "fems" + femsId) });
@@ -49,8 +192,7 @@ public class Odoo {
 		Map<String, Object> record = Odoo.readOne(Settings.ODOO_URL, Settings.ODOO_DATABASE, 1, Settings.ODOO_PASSWORD,
 				Settings.ODOO_FEMS_MODEL, recordIds[0], new Field[] { Field.FemsDevice.OPENEMS_CONFIG });
 
-		return EdgeConfig
-				.fromJson(JsonUtils.parseToJsonObject((String) record.get(Field.FemsDevice.OPENEMS_CONFIG.n())));
+		return (String) record.get(Field.FemsDevice.OPENEMS_CONFIG.n());
 	}
 
 	/**
@@ -152,39 +294,9 @@ public class Odoo {
 	 * @return Odoo object ids
 	 * @throws OpenemsException
 	 */
-	// TODO this method is not yet functional
 	public static Map<String, Object>[] searchAndRead(String url, String database, int uid, String password,
 			String model, Domain[] domains, Field[] fields) throws Exception {
-		// Add domain filter
-		Object[] domain = new Object[domains.length];
-		for (int i = 0; i < domains.length; i++) {
-			Domain filter = domains[i];
-			domain[i] = new Object[] { filter.field, filter.operator, filter.value };
-		}
-		Object[] paramsDomain = new Object[] { domain };
-		// Add fields
-		String[] fieldStrings = new String[fields.length];
-		for (int i = 0; i < fields.length; i++) {
-			fieldStrings[i] = fields[i].n();
-		}
-		Map<String, String[]> paramsFields = new HashMap<>();
-		paramsFields.put("fields", fieldStrings);
-		// Create request params
-		String action = "search_read";
-		Object[] params = new Object[] { database, uid, password, model, action, paramsDomain, paramsFields };
-		try {
-			// Execute XML request
-			executeKw(url, params);
-			// Object[] resultObjs = (Object[]) executeKw(url, params);
-			// Parse results
-			// int[] results = new int[resultObjs.length];
-			// for (int i = 0; i < resultObjs.length; i++) {
-			// results[i] = (int) resultObjs[i];
-			// }
-			return null;
-		} catch (Throwable e) {
-			throw new Exception("Unable to search and read from Odoo: " + e.getMessage());
-		}
+		return searchRead(url, database, uid, password, model, fields, domains);
 	}
 
 	/**
@@ -251,6 +363,26 @@ public class Odoo {
 	 */
 	public static Map<String, Object>[] searchRead(String url, String database, int uid, String password, String model,
 			Field[] fields, Domain... domains) throws Exception {
+		return searchRead(url, database, uid, password, model, fields, 0, 0, domains);
+	}
+
+	/**
+	 * Search-Reads one page of records from Odoo, ordered by id
+	 * 
+	 * @param url      URL of Odoo instance
+	 * @param database Database name
+	 * @param uid      UID of user (e.g. '1' for admin)
+	 * @param password Password of user
+	 * @param model    Odoo model to query (e.g. 'res.partner')
+	 * @param fields   fields that should be read
+	 * @param offset   number of records to skip
+	 * @param limit    maximum number of records; '0' for all
+	 * @param domains  filter domains
+	 * @return
+	 * @throws OpenemsException
+	 */
+	public static Map<String, Object>[] searchRead(String url, String database, int uid, String password, String model,
+			Field[] fields, int offset, int limit, Domain... domains) throws Exception {
 		// Create request params
 		String action = "search_read";
 		// Add domain filter
@@ -263,12 +395,15 @@ public class Odoo {
 		// Add fields
 		String[] fieldStrings = new String[fields.length];
 		for (int i = 0; i < fields.length; i++) {
-			fieldStrings[i] = fields[i].toString();
+			fieldStrings[i] = fields[i].n();
 		}
-		Map<String, String[]> paramsFields = new HashMap<>();
-		paramsFields.put("fields", fieldStrings);
+		Map<String, Object> paramsRules = new HashMap<>();
+		paramsRules.put("fields", fieldStrings);
+		paramsRules.put("offset", offset);
+		paramsRules.put("limit", limit);
+		paramsRules.put("order", "id");
 		// Create request params
-		Object[] params = new Object[] { database, uid, password, model, action, paramsDomain, paramsFields };
+		Object[] params = new Object[] { database, uid, password, model, action, paramsDomain, paramsRules };
 		try {
 			// Execute XML request
 			Object[] resultObjs = (Object[]) executeKw(url, params);
@@ -278,7 +413,7 @@ public class Odoo {
 			for (int i = 0; i < resultObjs.length; i++) {
 				@SuppressWarnings("unchecked")
 				Map<String, Object> result = (Map<String, Object>) resultObjs[i];
-				results[0] = result;
+				results[i] = result;
 			}
 			return results;
 		} catch (Throwable e) {
@@ -0,0 +1,216 @@
+package dbconverter.odoo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.xmlrpc.XmlRpcException;
+import org.apache.xmlrpc.XmlRpcRequest;
+import org.apache.xmlrpc.client.XmlRpcClient;
+import org.apache.xmlrpc.client.XmlRpcClientConfigImpl;
+import org.apache.xmlrpc.client.XmlRpcClientException;
+import org.apache.xmlrpc.client.XmlRpcHttpClientConfig;
+import org.apache.xmlrpc.client.XmlRpcHttpTransport;
+import org.apache.xmlrpc.client.XmlRpcHttpTransportException;
+import org.apache.xmlrpc.common.XmlRpcStreamRequestConfig;
+import org.xml.sax.SAXException;
+
+import okhttp3.ConnectionPool;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+
+/**
+ * Holds the long-lived XML-RPC client that is shared by all calls to Odoo.
+ *
+ * <p>
+ * The client sends its requests via OkHttp and keeps up to {@link #POOL_SIZE}
+ * HTTP connections alive between calls. It is thread-safe; the configs per
+ * Odoo URL are created once. {@link #getExecutor()} provides
+ * {@link #POOL_SIZE} threads for asynchronous calls, e.g. to fetch configs
+ * while another FEMS is converted. {@link #close()} has to be called at the
+ * end of the run.
+ */
+public class OdooPool {
+
+	/**
+	 * Maximum number of idle HTTP connections to keep and maximum number of
+	 * concurrent asynchronous calls.
+	 */
+	public static int POOL_SIZE = 4;
+
+	/**
+	 * How long an idle HTTP connection is kept alive.
+	 */
+	public static int KEEP_ALIVE_SECONDS = 300;
+
+	/**
+	 * Timeout for establishing a connection to Odoo.
+	 */
+	public static int CONNECT_TIMEOUT_MILLIS = 5_000;
+
+	/**
+	 * Timeout for reading the reply of Odoo.
+	 */
+	public static int REPLY_TIMEOUT_MILLIS = 30_000;
+
+	private final static MediaType TEXT_XML = MediaType.parse("text/xml");
+
+	private static XmlRpcClient client = null;
+	private static OkHttpClient httpClient = null;
+	private static ConnectionPool connectionPool = null;
+	private static ExecutorService executor = null;
+	// XML-RPC configs by URL
+	private final static Map<String, XmlRpcClientConfigImpl> CONFIGS = new ConcurrentHashMap<>();
+
+	private OdooPool() {
+	}
+
+	/**
+	 * Executes 'execute_kw' on the object endpoint of the Odoo instance.
+	 *
+	 * @param url    URL of Odoo instance
+	 * @param params the parameters
+	 * @return the result
+	 * @throws XmlRpcException       on error
+	 * @throws MalformedURLException on illegal URL
+	 */
+	public static Object execute(String url, Object[] params) throws XmlRpcException, MalformedURLException {
+		return getClient().execute(getConfig(url), "execute_kw", params);
+	}
+
+	/**
+	 * Gets the executor for asynchronous calls; creates it on first call.
+	 *
+	 * @return the executor
+	 */
+	public static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(Math.max(POOL_SIZE, 1), runnable -> {
+				Thread thread = new Thread(runnable, "Odoo");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return executor;
+	}
+
+	private static synchronized XmlRpcClient getClient() {
+		if (client == null) {
+			connectionPool = new ConnectionPool(Math.max(POOL_SIZE, 1), KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+			httpClient = new OkHttpClient.Builder() //
+					.connectionPool(connectionPool) //
+					.connectTimeout(CONNECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS) //
+					.readTimeout(REPLY_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS) //
+					.writeTimeout(REPLY_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS) //
+					.build();
+			XmlRpcClient xmlRpcClient = new XmlRpcClient();
+			OkHttpClient okHttpClient = httpClient;
+			xmlRpcClient.setTransportFactory(() -> new Transport(xmlRpcClient, okHttpClient));
+			client = xmlRpcClient;
+		}
+		return client;
+	}
+
+	private static XmlRpcClientConfigImpl getConfig(String url) throws MalformedURLException {
+		XmlRpcClientConfigImpl result = CONFIGS.get(url);
+		if (result == null) {
+			result = new XmlRpcClientConfigImpl();
+			result.setEnabledForExtensions(true);
+			result.setServerURL(new URL(String.format("%s/xmlrpc/2/object", url)));
+			result.setConnectionTimeout(CONNECT_TIMEOUT_MILLIS);
+			result.setReplyTimeout(REPLY_TIMEOUT_MILLIS);
+			CONFIGS.put(url, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Sends one XML-RPC request via the shared OkHttpClient. A Transport is
+	 * created per request.
+	 */
+	private static class Transport extends XmlRpcHttpTransport {
+
+		private final OkHttpClient httpClient;
+		private final Request.Builder request = new Request.Builder();
+		private Response response = null;
+
+		private Transport(XmlRpcClient client, OkHttpClient httpClient) {
+			super(client, USER_AGENT);
+			this.httpClient = httpClient;
+		}
+
+		@Override
+		public Object sendRequest(XmlRpcRequest request) throws XmlRpcException {
+			this.request.url(((XmlRpcHttpClientConfig) request.getConfig()).getServerURL());
+			return super.sendRequest(request);
+		}
+
+		@Override
+		protected void setRequestHeader(String header, String value) {
+			this.request.header(header, value);
+		}
+
+		@Override
+		protected void setContentLength(int length) {
+			// set by OkHttp
+		}
+
+		@Override
+		protected void writeRequest(ReqWriter writer) throws XmlRpcException, IOException, SAXException {
+			Buffer body = new Buffer();
+			writer.write(body.outputStream());
+			this.response = this.httpClient
+					.newCall(this.request.post(RequestBody.create(TEXT_XML, body.readByteString())).build())
+					.execute();
+			if (!this.response.isSuccessful()) {
+				int code = this.response.code();
+				String message = this.response.message();
+				this.response.close();
+				throw new XmlRpcHttpTransportException(code, message);
+			}
+		}
+
+		@Override
+		protected InputStream getInputStream() throws XmlRpcException {
+			return this.response.body().byteStream();
+		}
+
+		@Override
+		protected boolean isResponseGzipCompressed(XmlRpcStreamRequestConfig config) {
+			return "gzip".equalsIgnoreCase(this.response.header("Content-Encoding"));
+		}
+
+		@Override
+		protected void close() throws XmlRpcClientException {
+			if (this.response != null) {
+				this.response.close();
+			}
+		}
+	}
+
+	/**
+	 * Closes the shared client and releases its connections and threads.
+	 */
+	public static synchronized void close() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+		if (client != null) {
+			client = null;
+			httpClient = null;
+			connectionPool.evictAll();
+			connectionPool = null;
+		}
+	}
+}